@@ -78,9 +78,13 @@ public final class DemoActivity extends Activity {
     }
 
     private void subscribe() {
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setMaxBufferedCursors(1)
+                .create();
+
         mCursorDisposable = RxCursorLoader.flowable(getContentResolver(),
-                ArtistsQuery.QUERY, Schedulers.io(), BackpressureStrategy.LATEST)
-                .observeOn(AndroidSchedulers.mainThread())
+                ArtistsQuery.QUERY, Schedulers.io(), BackpressureStrategy.LATEST, options)
+                .observeOn(AndroidSchedulers.mainThread(), false, 1)
                 .subscribe(this::onCursorLoaded, this::onCursorLoadFailed);
     }
 
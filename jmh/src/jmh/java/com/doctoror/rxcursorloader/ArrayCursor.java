@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+
+/**
+ * Read-only {@link Cursor} stand-in over a row-major value array.
+ * <p>
+ * {@link android.database.MatrixCursor} can not be used on a plain JVM, because
+ * {@link android.database.AbstractCursor} depends on {@link Bundle}, which needs the Android
+ * runtime. Only the navigation and getter methods the loader uses are implemented. Closing is
+ * a no-op so that the same instance can be converted on every invocation.
+ */
+final class ArrayCursor implements Cursor {
+
+    private final String[] mColumnNames;
+    private final Object[] mValues;
+    private final int mCount;
+
+    private int mPosition = -1;
+
+    ArrayCursor(@NonNull final String[] columnNames, @NonNull final Object[] values) {
+        if (values.length % columnNames.length != 0) {
+            throw new IllegalArgumentException("Values are not a whole number of rows");
+        }
+        mColumnNames = columnNames;
+        mValues = values;
+        mCount = values.length / columnNames.length;
+    }
+
+    private Object get(final int column) {
+        if (mPosition < 0 || mPosition >= mCount) {
+            throw new IllegalStateException("Position " + mPosition + " out of bounds");
+        }
+        return mValues[mPosition * mColumnNames.length + column];
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public int getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public boolean move(final int offset) {
+        return moveToPosition(mPosition + offset);
+    }
+
+    @Override
+    public boolean moveToPosition(final int position) {
+        if (position >= mCount) {
+            mPosition = mCount;
+            return false;
+        }
+        if (position < 0) {
+            mPosition = -1;
+            return false;
+        }
+        mPosition = position;
+        return true;
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(mCount - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(mPosition + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(mPosition - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return mPosition == 0 && mCount != 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        return mPosition == mCount - 1 && mCount != 0;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return mCount == 0 || mPosition == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return mCount == 0 || mPosition == mCount;
+    }
+
+    @Override
+    public int getColumnIndex(final String columnName) {
+        for (int i = 0; i < mColumnNames.length; i++) {
+            if (mColumnNames[i].equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(final String columnName) {
+        final int index = getColumnIndex(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+        }
+        return index;
+    }
+
+    @Override
+    public String getColumnName(final int columnIndex) {
+        return mColumnNames[columnIndex];
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return mColumnNames.length;
+    }
+
+    @Override
+    public byte[] getBlob(final int columnIndex) {
+        return (byte[]) get(columnIndex);
+    }
+
+    @Override
+    public String getString(final int columnIndex) {
+        final Object value = get(columnIndex);
+        return value != null ? value.toString() : null;
+    }
+
+    @Override
+    public void copyStringToBuffer(final int columnIndex, final CharArrayBuffer buffer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public short getShort(final int columnIndex) {
+        return (short) getLong(columnIndex);
+    }
+
+    @Override
+    public int getInt(final int columnIndex) {
+        return (int) getLong(columnIndex);
+    }
+
+    @Override
+    public long getLong(final int columnIndex) {
+        final Object value = get(columnIndex);
+        return value instanceof Number ? ((Number) value).longValue()
+                : Long.parseLong(value.toString());
+    }
+
+    @Override
+    public float getFloat(final int columnIndex) {
+        return (float) getDouble(columnIndex);
+    }
+
+    @Override
+    public double getDouble(final int columnIndex) {
+        final Object value = get(columnIndex);
+        return value instanceof Number ? ((Number) value).doubleValue()
+                : Double.parseDouble(value.toString());
+    }
+
+    @Override
+    public int getType(final int columnIndex) {
+        final Object value = get(columnIndex);
+        if (value == null) {
+            return FIELD_TYPE_NULL;
+        }
+        if (value instanceof byte[]) {
+            return FIELD_TYPE_BLOB;
+        }
+        if (value instanceof Float || value instanceof Double) {
+            return FIELD_TYPE_FLOAT;
+        }
+        if (value instanceof Number) {
+            return FIELD_TYPE_INTEGER;
+        }
+        return FIELD_TYPE_STRING;
+    }
+
+    @Override
+    public boolean isNull(final int columnIndex) {
+        return get(columnIndex) == null;
+    }
+
+    @Override
+    public void deactivate() {
+        // Nothing to release
+    }
+
+    @Override
+    public boolean requery() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        // Reused across invocations
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    @Override
+    public void registerContentObserver(final ContentObserver observer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void unregisterContentObserver(final ContentObserver observer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void registerDataSetObserver(final DataSetObserver observer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void unregisterDataSetObserver(final DataSetObserver observer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setNotificationUri(final ContentResolver cr, final Uri uri) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Uri getNotificationUri() {
+        return null;
+    }
+
+    @Override
+    public boolean getWantsAllOnMoveCalls() {
+        return false;
+    }
+
+    @Override
+    public void setExtras(final Bundle extras) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Bundle getExtras() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Bundle respond(final Bundle extras) {
+        throw new UnsupportedOperationException();
+    }
+}
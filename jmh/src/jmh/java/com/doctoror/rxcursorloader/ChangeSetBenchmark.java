@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.support.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link ChangeSet#compute(long[], List, long[], List)} between two snapshots.
+ */
+@State(Scope.Benchmark)
+public class ChangeSetBenchmark {
+
+    /**
+     * How the new snapshot differs from the old one
+     */
+    public enum Change {
+
+        /**
+         * Same rows, nothing changed
+         */
+        NONE,
+
+        /**
+         * One percent of the rows removed and as many inserted
+         */
+        INSERTS_AND_REMOVALS,
+
+        /**
+         * One percent of the rows changed
+         */
+        UPDATES,
+
+        /**
+         * One percent of the rows moved to random positions
+         */
+        MOVES
+    }
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int rows;
+
+    @Param
+    public Change change;
+
+    private long[] mOldIds;
+    private List<String> mOldItems;
+
+    private long[] mNewIds;
+    private List<String> mNewItems;
+
+    @Setup
+    public void setup() {
+        mOldIds = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            mOldIds[i] = i;
+        }
+        mOldItems = items(mOldIds);
+
+        final Random random = new Random(rows);
+        final int changeCount = Math.max(1, rows / 100);
+
+        mNewIds = mOldIds.clone();
+        switch (change) {
+            case NONE:
+                mNewItems = items(mNewIds);
+                break;
+
+            case INSERTS_AND_REMOVALS:
+                for (int i = 0; i < changeCount; i++) {
+                    mNewIds[random.nextInt(rows)] = rows + i;
+                }
+                mNewItems = items(mNewIds);
+                break;
+
+            case UPDATES:
+                mNewItems = items(mNewIds);
+                for (int i = 0; i < changeCount; i++) {
+                    final int position = random.nextInt(rows);
+                    mNewItems.set(position, "Updated " + position);
+                }
+                break;
+
+            case MOVES:
+                for (int i = 0; i < changeCount; i++) {
+                    final int from = random.nextInt(rows);
+                    final int to = random.nextInt(rows);
+                    final long id = mNewIds[from];
+                    mNewIds[from] = mNewIds[to];
+                    mNewIds[to] = id;
+                }
+                mNewItems = items(mNewIds);
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unexpected change: " + change);
+        }
+    }
+
+    @NonNull
+    private static List<String> items(@NonNull final long[] ids) {
+        final List<String> items = new ArrayList<>(ids.length);
+        for (final long id : ids) {
+            items.add("Artist " + id);
+        }
+        return items;
+    }
+
+    @Benchmark
+    public ChangeSet compute() {
+        return ChangeSet.compute(mOldIds, mOldItems, mNewIds, mNewItems);
+    }
+}
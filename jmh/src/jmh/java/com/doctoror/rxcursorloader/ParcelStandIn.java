@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.net.Uri;
+import android.support.annotation.Nullable;
+
+/**
+ * {@link android.os.Parcel} stand-in that lays out values the way the native Parcel does.
+ * <p>
+ * Parcel can not be used on a plain JVM, because its storage is native. Values are written to a
+ * little-endian byte array in 4 byte aligned slots. A String is its length followed by its UTF-16
+ * chars and a null terminator, a String array is its length followed by the Strings, and -1
+ * length stands for null. A {@link Uri} is written like {@link android.os.Parcel#writeParcelable}
+ * writes it, the creator name followed by the Uri type and its String. Only the methods
+ * {@link RxCursorLoader.Query} uses are implemented.
+ */
+final class ParcelStandIn {
+
+    private static final String URI_CREATOR_NAME = Uri.class.getName();
+
+    /**
+     * The type id of {@code Uri.StringUri}
+     */
+    private static final int URI_TYPE_STRING = 1;
+
+    private byte[] mData = new byte[256];
+
+    private int mSize;
+
+    private int mPosition;
+
+    /**
+     * Empties the parcel so that it can be written again without allocating.
+     */
+    void reset() {
+        mSize = 0;
+        mPosition = 0;
+    }
+
+    void setDataPosition(final int position) {
+        mPosition = position;
+    }
+
+    int dataSize() {
+        return mSize;
+    }
+
+    void writeInt(final int value) {
+        ensureCapacity(4);
+        final byte[] data = mData;
+        final int p = mSize;
+        data[p] = (byte) value;
+        data[p + 1] = (byte) (value >> 8);
+        data[p + 2] = (byte) (value >> 16);
+        data[p + 3] = (byte) (value >> 24);
+        mSize = p + 4;
+    }
+
+    int readInt() {
+        final byte[] data = mData;
+        final int p = mPosition;
+        mPosition = p + 4;
+        return (data[p] & 0xff)
+                | (data[p + 1] & 0xff) << 8
+                | (data[p + 2] & 0xff) << 16
+                | (data[p + 3] & 0xff) << 24;
+    }
+
+    void writeString(@Nullable final String value) {
+        if (value == null) {
+            writeInt(-1);
+            return;
+        }
+        final int length = value.length();
+        writeInt(length);
+
+        // The chars and the null terminator, padded to 4 bytes
+        final int size = ((length + 1) * 2 + 3) & ~3;
+        ensureCapacity(size);
+        final byte[] data = mData;
+        int p = mSize;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            data[p++] = (byte) c;
+            data[p++] = (byte) (c >> 8);
+        }
+        final int end = mSize + size;
+        while (p < end) {
+            data[p++] = 0;
+        }
+        mSize = end;
+    }
+
+    @Nullable
+    String readString() {
+        final int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        final char[] chars = new char[length];
+        final byte[] data = mData;
+        int p = mPosition;
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ((data[p] & 0xff) | (data[p + 1] & 0xff) << 8);
+            p += 2;
+        }
+        mPosition += ((length + 1) * 2 + 3) & ~3;
+        return new String(chars);
+    }
+
+    void writeStringArray(@Nullable final String[] values) {
+        if (values == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(values.length);
+        for (final String value : values) {
+            writeString(value);
+        }
+    }
+
+    @Nullable
+    String[] createStringArray() {
+        final int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        final String[] values = new String[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = readString();
+        }
+        return values;
+    }
+
+    void writeUri(@Nullable final Uri uri) {
+        if (uri == null) {
+            writeString(null);
+            return;
+        }
+        writeString(URI_CREATOR_NAME);
+        writeInt(URI_TYPE_STRING);
+        writeString(uri.toString());
+    }
+
+    @Nullable
+    Uri readUri() {
+        final String creator = readString();
+        if (creator == null) {
+            return null;
+        }
+        if (!URI_CREATOR_NAME.equals(creator)) {
+            throw new IllegalStateException("Unexpected creator " + creator);
+        }
+        final int type = readInt();
+        if (type != URI_TYPE_STRING) {
+            throw new IllegalStateException("Unexpected Uri type " + type);
+        }
+        return Uri.parse(readString());
+    }
+
+    private void ensureCapacity(final int size) {
+        if (mSize + size > mData.length) {
+            final byte[] data = new byte[Math.max(mData.length * 2, mSize + size)];
+            System.arraycopy(mData, 0, data, 0, mSize);
+            mData = data;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link RxCursorLoader.Query} creation, {@code equals} and {@code hashCode}, which the shared
+ * loader registry and {@link QueryCache} call on every lookup.
+ * <p>
+ * The Parcel round trip is measured in {@link QueryParcelBenchmark}.
+ */
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    static final Uri CONTENT_URI = Uri.parse(
+            "content://media/external/audio/media");
+
+    @Param({"3", "10", "40"})
+    public int columns;
+
+    private String[] mProjection;
+    private String[] mProjectionCopy;
+
+    private RxCursorLoader.Query mQuery;
+    private RxCursorLoader.Query mEqualQuery;
+    private RxCursorLoader.Query mLastColumnDiffers;
+
+    @Setup
+    public void setup() {
+        mProjection = projection(columns);
+        mProjectionCopy = projection(columns);
+        mQuery = buildQuery(mProjection);
+        mEqualQuery = buildQuery(mProjectionCopy);
+
+        final String[] differentProjection = projection(columns);
+        differentProjection[columns - 1] = "other";
+        mLastColumnDiffers = buildQuery(differentProjection);
+    }
+
+    @NonNull
+    static String[] projection(final int columns) {
+        final String[] projection = new String[columns];
+        projection[0] = "_id";
+        for (int i = 1; i < columns; i++) {
+            // Not interned, like column names read from a Parcel
+            projection[i] = new String("column_" + i);
+        }
+        return projection;
+    }
+
+    @NonNull
+    private static RxCursorLoader.Query buildQuery(@NonNull final String[] projection) {
+        return new RxCursorLoader.Query.Builder()
+                .setContentUri(CONTENT_URI)
+                .setProjection(projection)
+                .setSelection("artist=? AND album=? AND year>?")
+                .setSelectionArgs(new String[]{"Oh Long Johnson", "Oh Don Piano", "1990"})
+                .setSortOrder("title")
+                .create();
+    }
+
+    @Benchmark
+    public RxCursorLoader.Query create() {
+        return buildQuery(mProjection);
+    }
+
+    @Benchmark
+    public int hashCodeOf() {
+        return mQuery.hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsEqual() {
+        return mQuery.equals(mEqualQuery);
+    }
+
+    @Benchmark
+    public boolean equalsLastColumnDiffers() {
+        return mQuery.equals(mLastColumnDiffers);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.support.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link RxCursorLoader.Query} Parcel round trip, which runs whenever a {@link
+ * RxCursorLoader.Query} is saved to and restored from instance state or passed in an Intent.
+ * <p>
+ * {@link android.os.Parcel} is native, so the fields are written to and read from a
+ * {@link ParcelStandIn} in the same order as {@link RxCursorLoader.Query#writeToParcel} and
+ * {@link RxCursorLoader.Query#CREATOR} do.
+ */
+@State(Scope.Benchmark)
+public class QueryParcelBenchmark {
+
+    @Param({"3", "10", "40"})
+    public int columns;
+
+    private RxCursorLoader.Query mQuery;
+
+    private final ParcelStandIn mParcel = new ParcelStandIn();
+    private final ParcelStandIn mWritten = new ParcelStandIn();
+
+    @Setup
+    public void setup() {
+        mQuery = new RxCursorLoader.Query.Builder()
+                .setContentUri(QueryBenchmark.CONTENT_URI)
+                .setProjection(QueryBenchmark.projection(columns))
+                .setSelection("artist=? AND album=? AND year>?")
+                .setSelectionArgs(new String[]{"Oh Long Johnson", "Oh Don Piano", "1990"})
+                .setSortColumns(new String[]{"year", "title"}, false)
+                .setLimit(50)
+                .create();
+        write(mQuery, mWritten);
+    }
+
+    /**
+     * Mirrors {@link RxCursorLoader.Query#writeToParcel}
+     */
+    static void write(@NonNull final RxCursorLoader.Query query, @NonNull final ParcelStandIn p) {
+        p.writeUri(query.contentUri);
+        p.writeStringArray(query.projection);
+        p.writeString(query.selection);
+        p.writeStringArray(query.selectionArgs);
+        p.writeString(query.sortOrder);
+        p.writeInt(query.notifyForDescendants ? 1 : 0);
+        p.writeStringArray(query.sortColumns);
+        p.writeInt(query.sortDescending ? 1 : 0);
+        p.writeInt(query.limit);
+        p.writeInt(query.offset);
+    }
+
+    /**
+     * Mirrors {@link RxCursorLoader.Query#CREATOR}
+     */
+    @NonNull
+    static RxCursorLoader.Query read(@NonNull final ParcelStandIn p) {
+        final RxCursorLoader.Query query = new RxCursorLoader.Query();
+        query.contentUri = p.readUri();
+        query.projection = p.createStringArray();
+        query.selection = p.readString();
+        query.selectionArgs = p.createStringArray();
+        query.sortOrder = p.readString();
+        query.notifyForDescendants = p.readInt() != 0;
+        query.sortColumns = p.createStringArray();
+        query.sortDescending = p.readInt() != 0;
+        query.limit = p.readInt();
+        query.offset = p.readInt();
+        return query;
+    }
+
+    @Benchmark
+    public int writeToParcel() {
+        mParcel.reset();
+        write(mQuery, mParcel);
+        return mParcel.dataSize();
+    }
+
+    @Benchmark
+    public RxCursorLoader.Query createFromParcel() {
+        mWritten.setDataPosition(0);
+        return read(mWritten);
+    }
+
+    @Benchmark
+    public RxCursorLoader.Query roundTrip() {
+        mParcel.reset();
+        write(mQuery, mParcel);
+        mParcel.setDataPosition(0);
+        return read(mParcel);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Mapping an {@link ArrayCursor} to an immutable snapshot with {@link SnapshotConverter}, reading
+ * every column of every row.
+ */
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"3", "10", "40"})
+    public int columns;
+
+    private Cursor mCursor;
+
+    private SnapshotConverter<String[]> mConverter;
+
+    @Setup
+    public void setup() {
+        final Object[] values = new Object[rows * columns];
+        for (int row = 0; row < rows; row++) {
+            values[row * columns] = (long) row;
+            for (int column = 1; column < columns; column++) {
+                values[row * columns + column] = "value " + column;
+            }
+        }
+        mCursor = new ArrayCursor(QueryBenchmark.projection(columns), values);
+
+        final int columnCount = columns;
+        mConverter = new SnapshotConverter<>(new RowMapper<String[]>() {
+
+            @NonNull
+            @Override
+            public String[] map(@NonNull final Cursor cursor) {
+                final String[] row = new String[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = cursor.getString(i);
+                }
+                return row;
+            }
+        });
+    }
+
+    @Benchmark
+    public List<String[]> convert() {
+        return mConverter.convert(mCursor);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory read-only provider that returns a fixed number of artist rows for any query.
+ */
+public final class ArtistsProvider extends ContentProvider {
+
+    static final String AUTHORITY = "com.doctoror.rxcursorloader.benchmark.provider";
+
+    static final Uri CONTENT_URI = new Uri.Builder()
+            .scheme("content")
+            .authority(AUTHORITY)
+            .appendPath("artists")
+            .build();
+
+    static final String COLUMN_ARTIST = "artist";
+
+    private static final String[] COLUMNS = new String[]{
+            BaseColumns._ID,
+            COLUMN_ARTIST
+    };
+
+    private final AtomicInteger mQueryCount = new AtomicInteger();
+
+    private volatile int mRowCount = 100;
+
+    void setRowCount(final int rowCount) {
+        mRowCount = rowCount;
+    }
+
+    int getQueryCount() {
+        return mQueryCount.get();
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(
+            @NonNull final Uri uri,
+            @Nullable final String[] projection,
+            @Nullable final String selection,
+            @Nullable final String[] selectionArgs,
+            @Nullable final String sortOrder) {
+        mQueryCount.incrementAndGet();
+        final int rowCount = mRowCount;
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS, rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            cursor.addRow(new Object[]{(long) i, "Artist " + i});
+        }
+        return cursor;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull final Uri uri) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull final Uri uri, @Nullable final ContentValues values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(
+            @NonNull final Uri uri,
+            @Nullable final String selection,
+            @Nullable final String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(
+            @NonNull final Uri uri,
+            @Nullable final ContentValues values,
+            @Nullable final String selection,
+            @Nullable final String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+}
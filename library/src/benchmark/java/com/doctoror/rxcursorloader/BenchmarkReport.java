@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Collects the results of one benchmark and writes them as JSON to the directory passed in the
+ * {@value #PROPERTY_OUTPUT_DIR} system property, or to {@code build/benchmark} if not set.
+ */
+final class BenchmarkReport {
+
+    static final String PROPERTY_OUTPUT_DIR = "rxcursorloader.benchmark.outputDir";
+
+    private final String mName;
+    private final JSONObject mJson = new JSONObject();
+
+    BenchmarkReport(@NonNull final String name) {
+        mName = name;
+        put("benchmark", name);
+    }
+
+    @NonNull
+    BenchmarkReport put(@NonNull final String key, @NonNull final Object value) {
+        try {
+            mJson.put(key, value);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Puts the distribution of the samples as an object with min, median, p90, p99, max and
+     * mean values.
+     */
+    @NonNull
+    BenchmarkReport putSamples(@NonNull final String key, @NonNull final long[] samples) {
+        if (samples.length == 0) {
+            throw new IllegalArgumentException("No samples for " + key);
+        }
+        final long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (final long sample : sorted) {
+            sum += sample;
+        }
+        final JSONObject stats = new JSONObject();
+        try {
+            stats.put("count", sorted.length);
+            stats.put("min", sorted[0]);
+            stats.put("median", percentile(sorted, 50));
+            stats.put("p90", percentile(sorted, 90));
+            stats.put("p99", percentile(sorted, 99));
+            stats.put("max", sorted[sorted.length - 1]);
+            stats.put("mean", sum / sorted.length);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return put(key, stats);
+    }
+
+    private static long percentile(@NonNull final long[] sorted, final int percentile) {
+        final int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    /**
+     * Writes the report to {@code <output dir>/<name>.json} and prints it to standard output.
+     */
+    void write() throws IOException {
+        final String json;
+        try {
+            json = mJson.toString(2);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        System.out.println(json);
+
+        final File dir = new File(System.getProperty(PROPERTY_OUTPUT_DIR, "build/benchmark"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        final Writer writer = new OutputStreamWriter(
+                new FileOutputStream(new File(dir, mName + ".json")), "UTF-8");
+        try {
+            writer.write(json);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.DisposableSubscriber;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the costs of {@link RxCursorLoader#flowable(ContentResolver, RxCursorLoader.Query,
+ * io.reactivex.Scheduler, BackpressureStrategy)} loaders and of concurrent {@code single}
+ * batches against {@link ArtistsProvider}.
+ * <p>
+ * Only compiled when the build is run with {@code -Pbenchmark}. Every benchmark writes a JSON
+ * report through {@link BenchmarkReport}. Times are in nanoseconds.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public final class RxCursorLoaderBenchmark {
+
+    private static final int ROW_COUNT = 100;
+
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final int ITERATIONS = 500;
+
+    private static final int BATCH_SIZE = 100;
+    private static final int BATCH_WARMUP_ITERATIONS = 5;
+    private static final int BATCH_ITERATIONS = 50;
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * A storm is over when no reload is emitted for this long
+     */
+    private static final long QUIET_PERIOD_MILLIS = 200;
+
+    private ContentResolver contentResolver;
+    private ArtistsProvider provider;
+
+    @Before
+    public void setup() {
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+        provider = Robolectric.setupContentProvider(
+                ArtistsProvider.class, ArtistsProvider.AUTHORITY);
+        provider.setRowCount(ROW_COUNT);
+    }
+
+    @NonNull
+    private static RxCursorLoader.Query buildQuery(final int index) {
+        return new RxCursorLoader.Query.Builder()
+                .setContentUri(ArtistsProvider.CONTENT_URI)
+                .setSelection(ArtistsProvider.COLUMN_ARTIST + "!=" + index)
+                .create();
+    }
+
+    @NonNull
+    private EmissionRecorder subscribe(final int index) {
+        return subscribe(index, RxCursorLoader.Options.DEFAULT);
+    }
+
+    @NonNull
+    private EmissionRecorder subscribe(
+            final int index,
+            @NonNull final RxCursorLoader.Options options) {
+        return RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(index),
+                Schedulers.io(),
+                BackpressureStrategy.LATEST,
+                options)
+                .subscribeWith(new EmissionRecorder());
+    }
+
+    private void notifyChange() {
+        contentResolver.notifyChange(ArtistsProvider.CONTENT_URI, null);
+    }
+
+    private int registeredObserverCount() {
+        return Shadows.shadowOf(contentResolver)
+                .getContentObservers(ArtistsProvider.CONTENT_URI)
+                .size();
+    }
+
+    @Test
+    public void subscribeToFirstEmission() throws Exception {
+        final long[] samples = new long[ITERATIONS];
+        for (int i = -WARMUP_ITERATIONS; i < ITERATIONS; i++) {
+            final long start = System.nanoTime();
+            final EmissionRecorder recorder = subscribe(0);
+            final long emitted = recorder.awaitEmission();
+            recorder.dispose();
+            if (i >= 0) {
+                samples[i] = emitted - start;
+            }
+        }
+
+        new BenchmarkReport("subscribe_to_first_emission")
+                .put("rows", ROW_COUNT)
+                .putSamples("latency_ns", samples)
+                .write();
+    }
+
+    @Test
+    public void notificationToEmission() throws Exception {
+        notificationToEmission("notification_to_emission", RxCursorLoader.Options.DEFAULT);
+    }
+
+    @Test
+    public void notificationToEmissionDirect() throws Exception {
+        notificationToEmission("notification_to_emission_direct",
+                new RxCursorLoader.Options.Builder()
+                        .setDirectNotifications(true)
+                        .create());
+    }
+
+    @Test
+    public void notificationToEmissionReusedClient() throws Exception {
+        notificationToEmission("notification_to_emission_reused_client",
+                new RxCursorLoader.Options.Builder()
+                        .setReuseProviderClient(true)
+                        .create());
+    }
+
+    private void notificationToEmission(
+            @NonNull final String name,
+            @NonNull final RxCursorLoader.Options options) throws Exception {
+        final EmissionRecorder recorder = subscribe(0, options);
+        recorder.awaitEmission();
+
+        final long[] samples = new long[ITERATIONS];
+        for (int i = -WARMUP_ITERATIONS; i < ITERATIONS; i++) {
+            final long start = System.nanoTime();
+            notifyChange();
+            final long emitted = recorder.awaitEmission();
+            if (i >= 0) {
+                samples[i] = emitted - start;
+            }
+        }
+        recorder.dispose();
+
+        new BenchmarkReport(name)
+                .put("rows", ROW_COUNT)
+                .putSamples("latency_ns", samples)
+                .write();
+    }
+
+    @Test
+    public void singleBatch() throws Exception {
+        singleBatch("single_batch", RxCursorLoader.Options.DEFAULT);
+    }
+
+    @Test
+    public void singleBatchReusedClient() throws Exception {
+        singleBatch("single_batch_reused_client",
+                new RxCursorLoader.Options.Builder()
+                        .setReuseProviderClient(true)
+                        .create());
+    }
+
+    /**
+     * Measures the per-query latency of batches of concurrent {@link RxCursorLoader#single(
+     * ContentResolver, RxCursorLoader.Query, RxCursorLoader.Options)} calls.
+     */
+    private void singleBatch(
+            @NonNull final String name,
+            @NonNull final RxCursorLoader.Options options) throws Exception {
+        final long[] samples = new long[BATCH_ITERATIONS * BATCH_SIZE];
+        for (int i = -BATCH_WARMUP_ITERATIONS; i < BATCH_ITERATIONS; i++) {
+            final long[] latencies = runBatch(options);
+            if (i >= 0) {
+                System.arraycopy(latencies, 0, samples, i * BATCH_SIZE, BATCH_SIZE);
+            }
+        }
+
+        new BenchmarkReport(name)
+                .put("rows", ROW_COUNT)
+                .put("batch_size", BATCH_SIZE)
+                .putSamples("latency_ns", samples)
+                .write();
+    }
+
+    @NonNull
+    private long[] runBatch(@NonNull final RxCursorLoader.Options options)
+            throws InterruptedException {
+        final long[] latencies = new long[BATCH_SIZE];
+        final CountDownLatch done = new CountDownLatch(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            final int index = i;
+            final long start = System.nanoTime();
+            RxCursorLoader.single(contentResolver, buildQuery(index), options)
+                    .subscribeOn(Schedulers.io())
+                    .subscribe(new Consumer<Cursor>() {
+
+                        @Override
+                        public void accept(final Cursor cursor) {
+                            latencies[index] = System.nanoTime() - start;
+                            cursor.close();
+                            done.countDown();
+                        }
+                    });
+        }
+        if (!done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new AssertionError("Timed out waiting for batch");
+        }
+        return latencies;
+    }
+
+    @Test
+    public void notificationStorm1000() throws Exception {
+        notificationStorm(1000);
+    }
+
+    @Test
+    public void notificationStorm10000() throws Exception {
+        notificationStorm(10000);
+    }
+
+    private void notificationStorm(final int notificationCount) throws Exception {
+        final EmissionRecorder recorder = subscribe(0);
+        recorder.awaitEmission();
+
+        final int queriesBefore = provider.getQueryCount();
+        final long start = System.nanoTime();
+        for (int i = 0; i < notificationCount; i++) {
+            notifyChange();
+        }
+        final long stormNanos = System.nanoTime() - start;
+
+        int emissionCount = 0;
+        long lastEmitted = start;
+        Long emitted;
+        while ((emitted = recorder.emissions.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS))
+                != null) {
+            emissionCount++;
+            lastEmitted = emitted;
+        }
+        recorder.dispose();
+        assertTrue("The storm was not followed by a reload", emissionCount != 0);
+
+        final long settleNanos = lastEmitted - start;
+        new BenchmarkReport("notification_storm_" + notificationCount)
+                .put("rows", ROW_COUNT)
+                .put("notifications", notificationCount)
+                .put("queries", provider.getQueryCount() - queriesBefore)
+                .put("emissions", emissionCount)
+                .put("storm_ns", stormNanos)
+                .put("settle_ns", settleNanos)
+                .put("emissions_per_second", emissionCount * 1e9 / settleNanos)
+                .write();
+    }
+
+    @Test
+    public void concurrentLoaders1() throws Exception {
+        concurrentLoaders(1);
+    }
+
+    @Test
+    public void concurrentLoaders10() throws Exception {
+        concurrentLoaders(10);
+    }
+
+    @Test
+    public void concurrentLoaders100() throws Exception {
+        concurrentLoaders(100);
+    }
+
+    private void concurrentLoaders(final int loaderCount) throws Exception {
+        final int threadsBefore = Thread.activeCount();
+
+        final List<EmissionRecorder> recorders = new ArrayList<>(loaderCount);
+        final long start = System.nanoTime();
+        for (int i = 0; i < loaderCount; i++) {
+            recorders.add(subscribe(i));
+        }
+        final long allLoadedNanos = awaitAllEmissions(recorders) - start;
+
+        final int observerThreads = RxCursorLoader.getLiveObserverThreadCount();
+        final int registeredObservers = registeredObserverCount();
+        final int threadsStarted = Thread.activeCount() - threadsBefore;
+
+        final long notifyStart = System.nanoTime();
+        notifyChange();
+        final long allReloadedNanos = awaitAllEmissions(recorders) - notifyStart;
+
+        for (final EmissionRecorder recorder : recorders) {
+            recorder.dispose();
+        }
+
+        new BenchmarkReport("concurrent_loaders_" + loaderCount)
+                .put("rows", ROW_COUNT)
+                .put("loaders", loaderCount)
+                .put("all_loaded_ns", allLoadedNanos)
+                .put("all_reloaded_ns", allReloadedNanos)
+                .put("observer_threads", observerThreads)
+                .put("registered_observers", registeredObservers)
+                .put("threads_started", threadsStarted)
+                .put("registered_observers_after_dispose", registeredObserverCount())
+                .write();
+    }
+
+    /**
+     * @return the time of the last emission
+     */
+    private static long awaitAllEmissions(@NonNull final List<EmissionRecorder> recorders)
+            throws InterruptedException {
+        long last = 0;
+        for (final EmissionRecorder recorder : recorders) {
+            last = Math.max(last, recorder.awaitEmission());
+        }
+        return last;
+    }
+
+    /**
+     * Closes every emitted {@link Cursor} and records the time it was emitted at.
+     */
+    private static final class EmissionRecorder extends DisposableSubscriber<Cursor> {
+
+        final BlockingQueue<Long> emissions = new LinkedBlockingQueue<>();
+
+        private volatile Throwable mError;
+
+        @Override
+        public void onNext(@NonNull final Cursor cursor) {
+            emissions.add(System.nanoTime());
+            cursor.close();
+        }
+
+        @Override
+        public void onError(@NonNull final Throwable t) {
+            mError = t;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        long awaitEmission() throws InterruptedException {
+            final Long emitted = emissions.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (emitted == null) {
+                throw new AssertionError("Timed out waiting for emission", mError);
+            }
+            return emitted;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Materializes {@link RowMapper} snapshots like {@link SnapshotConverter} and stores them in a
+ * {@link QueryCache}.
+ * <p>
+ * A snapshot is cached with the {@link QueryCache.Ticket} prepared before its query started,
+ * either on creation or by {@link #prepare()}. The {@link QueryCache.Ticket} keeps the cache
+ * observing the content URI, so {@link #release()} must be called once no more queries run.
+ *
+ * @param <T> the type of the mapped rows
+ */
+final class CachingConverter<T> implements CursorConverter<List<T>> {
+
+    @NonNull
+    private final QueryCache mCache;
+
+    @NonNull
+    private final ContentResolver mContentResolver;
+
+    @NonNull
+    private final RxCursorLoader.Query mQuery;
+
+    @NonNull
+    private final RowMapper<T> mMapper;
+
+    @NonNull
+    private final SnapshotConverter<T> mDelegate;
+
+    /**
+     * Guarded by this
+     */
+    @NonNull
+    private QueryCache.Ticket mTicket;
+
+    /**
+     * Guarded by this
+     */
+    private boolean mReleased;
+
+    private boolean mServedCached;
+
+    CachingConverter(
+            @NonNull final QueryCache cache,
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final RowMapper<T> mapper) {
+        mDelegate = new SnapshotConverter<>(mapper);
+        mCache = cache;
+        mContentResolver = resolver;
+        mQuery = query;
+        mMapper = mapper;
+        mTicket = cache.prepare(resolver, query);
+    }
+
+    /**
+     * Looks up the cached snapshot. Must be called before the first query.
+     *
+     * @return the fresh cached snapshot, or null on a miss
+     */
+    @Nullable
+    List<T> cached() {
+        final List<T> cached = mCache.get(mQuery, mMapper);
+        mServedCached = cached != null;
+        return cached;
+    }
+
+    /**
+     * @return true if {@link #cached()} returned a snapshot and the content did not change
+     * since
+     */
+    boolean isCachedFresh() {
+        return mServedCached && currentTicket().isValid();
+    }
+
+    /**
+     * Prepares the {@link QueryCache.Ticket} for the next query. Must be called before every
+     * query but the first one, which may use the {@link QueryCache.Ticket} prepared on
+     * creation.
+     */
+    synchronized void prepare() {
+        if (mReleased) {
+            return;
+        }
+        mCache.release(mTicket);
+        mTicket = mCache.prepare(mContentResolver, mQuery);
+    }
+
+    /**
+     * Releases the {@link QueryCache.Ticket}. Nothing is prepared after this.
+     */
+    synchronized void release() {
+        mReleased = true;
+        mCache.release(mTicket);
+    }
+
+    @NonNull
+    private synchronized QueryCache.Ticket currentTicket() {
+        return mTicket;
+    }
+
+    @NonNull
+    @Override
+    public List<T> convert(@NonNull final Cursor cursor) {
+        final List<T> items = mDelegate.convert(cursor);
+        mCache.put(currentTicket(), mQuery, mMapper, items);
+        return items;
+    }
+
+    @Override
+    public void discard(@NonNull final List<T> item) {
+        // Nothing to release
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * A single {@link ContentResolver} query that can be cancelled from another thread while it
+ * runs. Cancellation uses {@link CancellationSignal} on API 16 and above and does nothing on
+ * older versions.
+ * <p>
+ * A cancelled query either throws {@code OperationCanceledException} or returns a
+ * {@link Cursor} that must be closed and never emitted. Check {@link #isCanceled()} to tell a
+ * cancellation from a failure.
+ */
+final class CancellableQuery {
+
+    private final Object mLock = new Object();
+
+    private boolean mCanceled;
+
+    /**
+     * The {@link CancellationSignal} on API 16 and above
+     */
+    @Nullable
+    private final Object mSignal;
+
+    CancellableQuery() {
+        mSignal = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                ? Api16.newSignal() : null;
+    }
+
+    /**
+     * Queries with the arguments {@link Bundle} on API 26 and above if the {@link
+     * RxCursorLoader.Query} has sort columns, limit or offset, and with the legacy arguments
+     * otherwise or if the provider did not honor the limit and offset.
+     */
+    @Nullable
+    Cursor query(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query) {
+        if (mSignal != null
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && QueryArgs.isSupported(query)) {
+            final Cursor c = Api26.query(resolver, query, mSignal);
+            if (QueryArgs.isHonored(query, c)) {
+                return c;
+            }
+            c.close();
+        }
+        return query(resolver, query.contentUri, query.projection, query.selection,
+                query.selectionArgs, query.legacySortOrder());
+    }
+
+    /**
+     * Queries through the {@link ProviderClients.Lease} if any, through the
+     * {@link ContentResolver} otherwise.
+     */
+    @Nullable
+    Cursor query(
+            @NonNull final ContentResolver resolver,
+            @Nullable final ProviderClients.Lease client,
+            @NonNull final RxCursorLoader.Query query) {
+        if (client != null && mSignal != null) {
+            return client.query(query, mSignal);
+        }
+        return query(resolver, query);
+    }
+
+    @Nullable
+    Cursor query(
+            @NonNull final ContentResolver resolver,
+            @NonNull final Uri uri,
+            @Nullable final String[] projection,
+            @Nullable final String selection,
+            @Nullable final String[] selectionArgs,
+            @Nullable final String sortOrder) {
+        if (mSignal != null) {
+            return Api16.query(resolver, uri, projection, selection, selectionArgs, sortOrder,
+                    mSignal);
+        }
+        return resolver.query(uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    /**
+     * Cancels the query if it is still running and marks it cancelled, so that its result is
+     * discarded.
+     */
+    void cancel() {
+        synchronized (mLock) {
+            if (mCanceled) {
+                return;
+            }
+            mCanceled = true;
+        }
+        if (mSignal != null) {
+            Api16.cancel(mSignal);
+        }
+    }
+
+    /**
+     * @return true if {@link #cancel()} was called
+     */
+    boolean isCanceled() {
+        synchronized (mLock) {
+            return mCanceled;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private static final class Api26 {
+
+        @Nullable
+        static Cursor query(
+                @NonNull final ContentResolver resolver,
+                @NonNull final RxCursorLoader.Query query,
+                @NonNull final Object signal) {
+            return resolver.query(query.contentUri, query.projection,
+                    QueryArgs.toBundle(query), (CancellationSignal) signal);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class Api16 {
+
+        @NonNull
+        static Object newSignal() {
+            return new CancellationSignal();
+        }
+
+        @Nullable
+        static Cursor query(
+                @NonNull final ContentResolver resolver,
+                @NonNull final Uri uri,
+                @Nullable final String[] projection,
+                @Nullable final String selection,
+                @Nullable final String[] selectionArgs,
+                @Nullable final String sortOrder,
+                @NonNull final Object signal) {
+            return resolver.query(uri, projection, selection, selectionArgs, sortOrder,
+                    (CancellationSignal) signal);
+        }
+
+        static void cancel(@NonNull final Object signal) {
+            ((CancellationSignal) signal).cancel();
+        }
+    }
+}
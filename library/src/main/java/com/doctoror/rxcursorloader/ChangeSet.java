@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Differences between two successive snapshots of rows identified by a stable id.
+ * <ul>
+ * <li>Removed positions refer to the previous snapshot.</li>
+ * <li>Inserted positions refer to the new snapshot.</li>
+ * <li>Moves map a position in the previous snapshot to the position of the same row in the new
+ * snapshot. Only rows that changed their order relative to the other retained rows are
+ * reported as moved.</li>
+ * <li>Changed positions refer to the new snapshot and list retained rows, moved or not, whose
+ * mapped value is not equal to the previous one.</li>
+ * </ul>
+ * All positions are sorted in ascending order. Moves are sorted by their new position.
+ */
+public final class ChangeSet {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int[] mRemoved;
+    private final int[] mInserted;
+    private final int[] mMovedFrom;
+    private final int[] mMovedTo;
+    private final int[] mChanged;
+
+    private ChangeSet(
+            @NonNull final int[] removed,
+            @NonNull final int[] inserted,
+            @NonNull final int[] movedFrom,
+            @NonNull final int[] movedTo,
+            @NonNull final int[] changed) {
+        mRemoved = removed;
+        mInserted = inserted;
+        mMovedFrom = movedFrom;
+        mMovedTo = movedTo;
+        mChanged = changed;
+    }
+
+    /**
+     * Computes the {@link ChangeSet} between two snapshots.
+     * <p>
+     * Matching rows by id takes linear time using a primitive hash index. If the retained rows
+     * kept their relative order, which is the common case, no further work is done. Otherwise
+     * the largest set of rows that kept their order is found in O(K log K) for K retained rows
+     * and the rest are reported as moves.
+     *
+     * @param oldIds   the row ids of the previous snapshot
+     * @param oldItems the mapped rows of the previous snapshot
+     * @param newIds   the row ids of the new snapshot
+     * @param newItems the mapped rows of the new snapshot
+     * @return the {@link ChangeSet}
+     */
+    @NonNull
+    static ChangeSet compute(
+            @NonNull final long[] oldIds,
+            @NonNull final List<?> oldItems,
+            @NonNull final long[] newIds,
+            @NonNull final List<?> newItems) {
+        final LongIntMap oldPositions = new LongIntMap(oldIds.length);
+        for (int i = 0; i < oldIds.length; i++) {
+            // Duplicate ids are matched with their first occurrence only
+            oldPositions.putIfAbsent(oldIds[i], i);
+        }
+
+        final boolean[] retained = new boolean[oldIds.length];
+
+        // Old and new positions of each retained row, in new order
+        final int[] retainedOld = new int[newIds.length];
+        final int[] retainedNew = new int[newIds.length];
+        int retainedCount = 0;
+
+        final int[] inserted = new int[newIds.length];
+        int insertedCount = 0;
+
+        boolean ordered = true;
+        for (int i = 0; i < newIds.length; i++) {
+            final int oldPosition = oldPositions.get(newIds[i]);
+            if (oldPosition == LongIntMap.NO_VALUE || retained[oldPosition]) {
+                inserted[insertedCount++] = i;
+            } else {
+                retained[oldPosition] = true;
+                if (retainedCount != 0 && oldPosition < retainedOld[retainedCount - 1]) {
+                    ordered = false;
+                }
+                retainedOld[retainedCount] = oldPosition;
+                retainedNew[retainedCount] = i;
+                retainedCount++;
+            }
+        }
+
+        final int[] removed = new int[oldIds.length - retainedCount];
+        int removedCount = 0;
+        for (int i = 0; i < retained.length; i++) {
+            if (!retained[i]) {
+                removed[removedCount++] = i;
+            }
+        }
+
+        final boolean[] stable = ordered ? null : longestIncreasing(retainedOld, retainedCount);
+        final int movedCount = stable == null ? 0 : retainedCount - count(stable);
+        final int[] movedFrom = new int[movedCount];
+        final int[] movedTo = new int[movedCount];
+        int movedIndex = 0;
+
+        final int[] changed = new int[retainedCount];
+        int changedCount = 0;
+
+        for (int i = 0; i < retainedCount; i++) {
+            final int oldPosition = retainedOld[i];
+            final int newPosition = retainedNew[i];
+            if (stable != null && !stable[i]) {
+                movedFrom[movedIndex] = oldPosition;
+                movedTo[movedIndex] = newPosition;
+                movedIndex++;
+            }
+            if (!equal(oldItems.get(oldPosition), newItems.get(newPosition))) {
+                changed[changedCount++] = newPosition;
+            }
+        }
+
+        return new ChangeSet(
+                removed,
+                trim(inserted, insertedCount),
+                movedFrom,
+                movedTo,
+                trim(changed, changedCount));
+    }
+
+    /**
+     * Finds the longest strictly increasing subsequence using patience sorting.
+     *
+     * @param values the values
+     * @param length the number of values to use
+     * @return flags for values that are part of the subsequence
+     */
+    @NonNull
+    private static boolean[] longestIncreasing(@NonNull final int[] values, final int length) {
+        // Index of the smallest tail value of an increasing subsequence of each length
+        final int[] tails = new int[length];
+        final int[] predecessors = new int[length];
+        int tailCount = 0;
+        for (int i = 0; i < length; i++) {
+            final int value = values[i];
+            int low = 0;
+            int high = tailCount;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (values[tails[mid]] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            predecessors[i] = low == 0 ? -1 : tails[low - 1];
+            tails[low] = i;
+            if (low == tailCount) {
+                tailCount++;
+            }
+        }
+
+        final boolean[] result = new boolean[length];
+        for (int i = tailCount == 0 ? -1 : tails[tailCount - 1]; i != -1; i = predecessors[i]) {
+            result[i] = true;
+        }
+        return result;
+    }
+
+    private static int count(@NonNull final boolean[] flags) {
+        int count = 0;
+        for (final boolean flag : flags) {
+            if (flag) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean equal(final Object a, final Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @NonNull
+    private static int[] trim(@NonNull final int[] array, final int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+        return length == array.length ? array : Arrays.copyOf(array, length);
+    }
+
+    /**
+     * @return true if the snapshots contain the same rows in the same order with equal values
+     */
+    public boolean isEmpty() {
+        return mRemoved.length == 0
+                && mInserted.length == 0
+                && mMovedFrom.length == 0
+                && mChanged.length == 0;
+    }
+
+    /**
+     * @return positions in the previous snapshot of the rows that were removed
+     */
+    @NonNull
+    public int[] getRemovedPositions() {
+        return mRemoved.clone();
+    }
+
+    /**
+     * @return positions in the new snapshot of the rows that were inserted
+     */
+    @NonNull
+    public int[] getInsertedPositions() {
+        return mInserted.clone();
+    }
+
+    /**
+     * @return the number of moved rows
+     */
+    public int getMoveCount() {
+        return mMovedFrom.length;
+    }
+
+    /**
+     * @param index the move index, from 0 to {@link #getMoveCount()} exclusive
+     * @return position of the moved row in the previous snapshot
+     */
+    public int getMovedFrom(final int index) {
+        return mMovedFrom[index];
+    }
+
+    /**
+     * @param index the move index, from 0 to {@link #getMoveCount()} exclusive
+     * @return position of the moved row in the new snapshot
+     */
+    public int getMovedTo(final int index) {
+        return mMovedTo[index];
+    }
+
+    /**
+     * @return positions in the new snapshot of the retained rows whose value changed
+     */
+    @NonNull
+    public int[] getChangedPositions() {
+        return mChanged.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{" +
+                "removed=" + Arrays.toString(mRemoved) +
+                ", inserted=" + Arrays.toString(mInserted) +
+                ", movedFrom=" + Arrays.toString(mMovedFrom) +
+                ", movedTo=" + Arrays.toString(mMovedTo) +
+                ", changed=" + Arrays.toString(mChanged) +
+                '}';
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableOperator;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.Scheduler;
+
+/**
+ * Takes over {@link Cursor} lifetimes from the subscriber. A {@link Cursor} is closed once the
+ * subscriber has returned from {@code onNext} with the next one, and the last {@link Cursor}
+ * is closed when the subscription is cancelled or terminated. Closing is done on the given
+ * {@link Scheduler} so that it does not block the subscriber thread.
+ * <p>
+ * Returning from {@code onNext} means the subscriber is done with the previous
+ * {@link Cursor} only if it consumes on the calling thread, so the thread hop is part of the
+ * operator. {@link Cursor}s emitted before the hop are tracked until they are delivered, and
+ * the ones still queued in {@code observeOn} are closed along with the last one.
+ */
+final class CloseReplacedCursorsOperator implements FlowableOperator<Cursor, Cursor> {
+
+    @NonNull
+    private final OpenCursors mOpenCursors;
+
+    @NonNull
+    private final Scheduler mCloseScheduler;
+
+    private CloseReplacedCursorsOperator(
+            @NonNull final OpenCursors openCursors,
+            @NonNull final Scheduler closeScheduler) {
+        mOpenCursors = openCursors;
+        mCloseScheduler = closeScheduler;
+    }
+
+    /**
+     * Moves the {@link Cursor}s to the subscriber {@link Scheduler} and closes them once
+     * replaced, or on cancel and termination, including the ones not delivered yet.
+     *
+     * @param upstream           the {@link Cursor} source
+     * @param observeOnScheduler the {@link Scheduler} to deliver the {@link Cursor}s on
+     * @param closeScheduler     the {@link Scheduler} to close the {@link Cursor}s on
+     * @return new {@link Flowable}
+     */
+    @NonNull
+    static Flowable<Cursor> observeOn(
+            @NonNull final Flowable<Cursor> upstream,
+            @NonNull final Scheduler observeOnScheduler,
+            @NonNull final Scheduler closeScheduler) {
+        return Flowable.defer(new Callable<Publisher<Cursor>>() {
+
+            @Override
+            public Publisher<Cursor> call() {
+                // Every subscription tracks its own Cursors
+                final OpenCursors openCursors = new OpenCursors();
+                return upstream
+                        .lift(new TrackOpenCursorsOperator(openCursors, closeScheduler))
+                        .observeOn(observeOnScheduler, false, 1)
+                        .lift(new CloseReplacedCursorsOperator(openCursors, closeScheduler));
+            }
+        });
+    }
+
+    @Override
+    public Subscriber<? super Cursor> apply(final Subscriber<? super Cursor> downstream) {
+        return new CloseReplacedCursorsSubscriber(downstream, mOpenCursors, mCloseScheduler);
+    }
+
+    private static void closeLater(
+            @NonNull final Scheduler scheduler,
+            @NonNull final List<Cursor> cursors) {
+        if (!cursors.isEmpty()) {
+            scheduler.scheduleDirect(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (final Cursor cursor : cursors) {
+                        cursor.close();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * The {@link Cursor}s of a subscription the subscriber has not been done with yet.
+     */
+    private static final class OpenCursors {
+
+        /**
+         * Emitted before the thread hop but not delivered yet. Guarded by this.
+         */
+        private final ArrayDeque<Cursor> mQueued = new ArrayDeque<>();
+
+        /**
+         * The last delivered {@link Cursor}. Guarded by this.
+         */
+        private Cursor mLast;
+
+        /**
+         * Whether the subscription ended. Guarded by this.
+         */
+        private boolean mDone;
+
+        /**
+         * @return false if the subscription has ended and the {@link Cursor} must be closed
+         */
+        synchronized boolean queue(@NonNull final Cursor cursor) {
+            if (mDone) {
+                return false;
+            }
+            mQueued.add(cursor);
+            return true;
+        }
+
+        /**
+         * @return false if the subscription has ended and the {@link Cursor} was closed
+         */
+        synchronized boolean take(@NonNull final Cursor cursor) {
+            if (mDone) {
+                return false;
+            }
+            mQueued.remove(cursor);
+            return true;
+        }
+
+        /**
+         * @return the {@link Cursor} to close
+         */
+        @NonNull
+        synchronized List<Cursor> replace(@NonNull final Cursor cursor) {
+            if (mDone) {
+                // Cancelled by the subscriber while delivering
+                return Collections.singletonList(cursor);
+            }
+            final Cursor replaced = mLast;
+            mLast = cursor;
+            return replaced != null
+                    ? Collections.singletonList(replaced)
+                    : Collections.<Cursor>emptyList();
+        }
+
+        /**
+         * @return the queued and the last {@link Cursor}s if the subscription has not ended
+         * before
+         */
+        @NonNull
+        synchronized List<Cursor> end() {
+            mDone = true;
+            final List<Cursor> open = new ArrayList<>(mQueued);
+            mQueued.clear();
+            if (mLast != null) {
+                open.add(mLast);
+                mLast = null;
+            }
+            return open;
+        }
+    }
+
+    /**
+     * Records the {@link Cursor}s before the thread hop, so that the ones queued in
+     * {@code observeOn} are closed if the subscription ends before they are delivered.
+     */
+    private static final class TrackOpenCursorsOperator
+            implements FlowableOperator<Cursor, Cursor> {
+
+        @NonNull
+        private final OpenCursors mOpenCursors;
+
+        @NonNull
+        private final Scheduler mCloseScheduler;
+
+        TrackOpenCursorsOperator(
+                @NonNull final OpenCursors openCursors,
+                @NonNull final Scheduler closeScheduler) {
+            mOpenCursors = openCursors;
+            mCloseScheduler = closeScheduler;
+        }
+
+        @Override
+        public Subscriber<? super Cursor> apply(final Subscriber<? super Cursor> downstream) {
+            return new FlowableSubscriber<Cursor>() {
+
+                @Override
+                public void onSubscribe(final Subscription s) {
+                    downstream.onSubscribe(s);
+                }
+
+                @Override
+                public void onNext(final Cursor cursor) {
+                    if (mOpenCursors.queue(cursor)) {
+                        downstream.onNext(cursor);
+                    } else {
+                        closeLater(mCloseScheduler, Collections.singletonList(cursor));
+                    }
+                }
+
+                @Override
+                public void onError(final Throwable t) {
+                    downstream.onError(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    downstream.onComplete();
+                }
+            };
+        }
+    }
+
+    private static final class CloseReplacedCursorsSubscriber
+            implements FlowableSubscriber<Cursor>, Subscription {
+
+        @NonNull
+        private final Subscriber<? super Cursor> mDownstream;
+
+        @NonNull
+        private final OpenCursors mOpenCursors;
+
+        @NonNull
+        private final Scheduler mCloseScheduler;
+
+        private Subscription mUpstream;
+
+        CloseReplacedCursorsSubscriber(
+                @NonNull final Subscriber<? super Cursor> downstream,
+                @NonNull final OpenCursors openCursors,
+                @NonNull final Scheduler closeScheduler) {
+            mDownstream = downstream;
+            mOpenCursors = openCursors;
+            mCloseScheduler = closeScheduler;
+        }
+
+        @Override
+        public void onSubscribe(final Subscription s) {
+            mUpstream = s;
+            mDownstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(final Cursor cursor) {
+            if (mOpenCursors.take(cursor)) {
+                mDownstream.onNext(cursor);
+                closeLater(mCloseScheduler, mOpenCursors.replace(cursor));
+            }
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            mDownstream.onError(t);
+            closeLater(mCloseScheduler, mOpenCursors.end());
+        }
+
+        @Override
+        public void onComplete() {
+            mDownstream.onComplete();
+            closeLater(mCloseScheduler, mOpenCursors.end());
+        }
+
+        @Override
+        public void request(final long n) {
+            mUpstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            mUpstream.cancel();
+            closeLater(mCloseScheduler, mOpenCursors.end());
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.FlowableOperator;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.Scheduler;
+
+/**
+ * Buffers at most a given number of {@link Cursor}s the subscriber has not requested yet. When
+ * a newer {@link Cursor} arrives at a full buffer, the oldest one is closed and counted in
+ * {@link LoaderStats}. {@link Cursor}s still buffered when the subscription is cancelled are
+ * closed on the loader {@link Scheduler}.
+ * <p>
+ * Requests are passed upstream as they are, so a loader that queries on demand does not query
+ * for a subscriber that has not requested more. The buffer only takes what a source that
+ * ignores backpressure, like a shared loader, emits ahead of the requests.
+ */
+final class CursorBackpressureOperator implements FlowableOperator<Cursor, Cursor> {
+
+    private final int mMaxBuffered;
+
+    @NonNull
+    private final Scheduler mScheduler;
+
+    @Nullable
+    private final LoaderStats mStats;
+
+    CursorBackpressureOperator(
+            final int maxBuffered,
+            @NonNull final Scheduler scheduler,
+            @Nullable final LoaderStats stats) {
+        mMaxBuffered = maxBuffered;
+        mScheduler = scheduler;
+        mStats = stats;
+    }
+
+    @Override
+    public Subscriber<? super Cursor> apply(final Subscriber<? super Cursor> downstream) {
+        return new CursorBackpressureSubscriber(downstream, mMaxBuffered, mScheduler, mStats);
+    }
+
+    private static final class CursorBackpressureSubscriber
+            implements FlowableSubscriber<Cursor>, Subscription {
+
+        @NonNull
+        private final Subscriber<? super Cursor> mDownstream;
+
+        private final int mMaxBuffered;
+
+        @NonNull
+        private final Scheduler mScheduler;
+
+        @Nullable
+        private final LoaderStats mStats;
+
+        /**
+         * Guarded by itself
+         */
+        private final ArrayDeque<Cursor> mBuffer = new ArrayDeque<>();
+
+        private final AtomicLong mRequested = new AtomicLong();
+
+        private final AtomicInteger mWip = new AtomicInteger();
+
+        private Subscription mUpstream;
+
+        private volatile boolean mCancelled;
+
+        private volatile boolean mDone;
+
+        private Throwable mError;
+
+        /**
+         * Set by a request that is not positive, signalled ahead of the buffered
+         * {@link Cursor}s
+         */
+        private volatile Throwable mRequestError;
+
+        CursorBackpressureSubscriber(
+                @NonNull final Subscriber<? super Cursor> downstream,
+                final int maxBuffered,
+                @NonNull final Scheduler scheduler,
+                @Nullable final LoaderStats stats) {
+            mDownstream = downstream;
+            mMaxBuffered = maxBuffered;
+            mScheduler = scheduler;
+            mStats = stats;
+        }
+
+        @Override
+        public void onSubscribe(final Subscription s) {
+            mUpstream = s;
+            mDownstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(final Cursor cursor) {
+            final boolean cancelled;
+            Cursor dropped = null;
+            synchronized (mBuffer) {
+                cancelled = mCancelled;
+                if (!cancelled) {
+                    mBuffer.offer(cursor);
+                    dropped = mBuffer.size() > mMaxBuffered ? mBuffer.poll() : null;
+                }
+            }
+            if (cancelled) {
+                // Delivered after cancel, nobody drains the buffer anymore
+                cursor.close();
+                return;
+            }
+            if (dropped != null) {
+                // Called on the loader thread
+                dropped.close();
+                if (mStats != null) {
+                    mStats.onCursorDropped();
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            mError = t;
+            mDone = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            mDone = true;
+            drain();
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                // Rule 3.9 requires signalling the error instead of throwing it
+                mRequestError = new IllegalArgumentException(
+                        "Request must be positive, was " + n);
+                mUpstream.cancel();
+                drain();
+                return;
+            }
+            while (true) {
+                final long requested = mRequested.get();
+                final long sum = requested + n;
+                // Long.MAX_VALUE means unbounded
+                if (mRequested.compareAndSet(requested, sum < 0 ? Long.MAX_VALUE : sum)) {
+                    break;
+                }
+            }
+            drain();
+            mUpstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            if (!mCancelled) {
+                mCancelled = true;
+                mUpstream.cancel();
+                // Never decremented, so that no drain runs after cancel
+                mWip.getAndIncrement();
+                // A running drain may have closed the buffer before onNext added to it
+                closeBufferedLater();
+            }
+        }
+
+        @Nullable
+        private Cursor poll() {
+            synchronized (mBuffer) {
+                return mBuffer.poll();
+            }
+        }
+
+        private boolean isBufferEmpty() {
+            synchronized (mBuffer) {
+                return mBuffer.isEmpty();
+            }
+        }
+
+        private void drain() {
+            if (mWip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            while (true) {
+                if (isRequestError()) {
+                    return;
+                }
+
+                final long requested = mRequested.get();
+                long emitted = 0;
+
+                while (emitted != requested) {
+                    if (mCancelled) {
+                        closeBufferedLater();
+                        return;
+                    }
+                    if (isRequestError()) {
+                        return;
+                    }
+
+                    final boolean done = mDone;
+                    final Cursor cursor = poll();
+                    if (done && cursor == null) {
+                        terminate();
+                        return;
+                    }
+                    if (cursor == null) {
+                        break;
+                    }
+
+                    mDownstream.onNext(cursor);
+                    emitted++;
+                }
+
+                if (emitted == requested) {
+                    if (mCancelled) {
+                        closeBufferedLater();
+                        return;
+                    }
+                    if (mDone && isBufferEmpty()) {
+                        terminate();
+                        return;
+                    }
+                }
+
+                if (emitted != 0) {
+                    produced(emitted);
+                }
+
+                missed = mWip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Signals the error of an invalid request, if any, and stops like on cancel. Must be
+         * called from the drain loop.
+         *
+         * @return true if the error was signalled
+         */
+        private boolean isRequestError() {
+            final Throwable error = mRequestError;
+            if (error == null) {
+                return false;
+            }
+            mCancelled = true;
+            closeBufferedLater();
+            mDownstream.onError(error);
+            return true;
+        }
+
+        private void produced(final long emitted) {
+            while (true) {
+                final long requested = mRequested.get();
+                if (requested == Long.MAX_VALUE
+                        || mRequested.compareAndSet(requested, requested - emitted)) {
+                    return;
+                }
+            }
+        }
+
+        private void terminate() {
+            final Throwable error = mError;
+            if (error != null) {
+                mDownstream.onError(error);
+            } else {
+                mDownstream.onComplete();
+            }
+        }
+
+        private void closeBufferedLater() {
+            final Cursor[] buffered;
+            synchronized (mBuffer) {
+                if (mBuffer.isEmpty()) {
+                    return;
+                }
+                buffered = mBuffer.toArray(new Cursor[mBuffer.size()]);
+                mBuffer.clear();
+            }
+            mScheduler.scheduleDirect(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (final Cursor cursor : buffered) {
+                        cursor.close();
+                    }
+                }
+            });
+        }
+    }
+}
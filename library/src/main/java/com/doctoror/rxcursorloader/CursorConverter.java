@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+/**
+ * Converts a loaded {@link Cursor} to the item a loader emits.
+ *
+ * @param <T> the type of the emitted item
+ */
+interface CursorConverter<T> {
+
+    /**
+     * Emits the {@link Cursor} as is.
+     */
+    CursorConverter<Cursor> IDENTITY = new CursorConverter<Cursor>() {
+
+        @NonNull
+        @Override
+        public Cursor convert(@NonNull final Cursor cursor) {
+            return cursor;
+        }
+
+        @Override
+        public void discard(@NonNull final Cursor item) {
+            item.close();
+        }
+    };
+
+    /**
+     * Converts the {@link Cursor}. Takes ownership of the {@link Cursor}, which must be closed
+     * by this method unless it is a part of the returned item.
+     *
+     * @param cursor the loaded {@link Cursor}
+     * @return the item to emit
+     * @throws Exception if conversion fails
+     */
+    @NonNull
+    T convert(@NonNull Cursor cursor) throws Exception;
+
+    /**
+     * Releases the resources of an item that was converted but never emitted.
+     *
+     * @param item the item that was not emitted
+     */
+    void discard(@NonNull T item);
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Materializes every row of a {@link Cursor} like {@link SnapshotConverter} and computes the
+ * {@link ChangeSet} against the previously converted {@link Cursor}.
+ * <p>
+ * Keeps the previous snapshot, so a new instance must be used for every loader subscription.
+ * A discarded item rolls the previous snapshot back, so that the next {@link ChangeSet} is
+ * computed against the last snapshot the subscriber has seen.
+ *
+ * @param <T> the type of the mapped rows
+ */
+final class DiffConverter<T> implements CursorConverter<SnapshotDiff<T>> {
+
+    private static final long[] NO_IDS = new long[0];
+
+    @NonNull
+    private final String mIdColumn;
+
+    @NonNull
+    private final RowMapper<T> mMapper;
+
+    @NonNull
+    private long[] mPreviousIds = NO_IDS;
+
+    @NonNull
+    private List<T> mPreviousItems = Collections.emptyList();
+
+    /**
+     * The snapshot that the last converted item replaced, restored if it is discarded
+     */
+    @NonNull
+    private long[] mReplacedIds = NO_IDS;
+
+    @NonNull
+    private List<T> mReplacedItems = Collections.emptyList();
+
+    DiffConverter(@NonNull final String idColumn, @NonNull final RowMapper<T> mapper) {
+        //noinspection ConstantConditions
+        if (idColumn == null) {
+            throw new NullPointerException("Id column param must not be null");
+        }
+        //noinspection ConstantConditions
+        if (mapper == null) {
+            throw new NullPointerException("RowMapper param must not be null");
+        }
+        mIdColumn = idColumn;
+        mMapper = mapper;
+    }
+
+    @NonNull
+    @Override
+    public SnapshotDiff<T> convert(@NonNull final Cursor cursor) {
+        final long[] ids;
+        final List<T> items;
+        try {
+            final int idIndex = cursor.getColumnIndexOrThrow(mIdColumn);
+            final int count = cursor.getCount();
+            ids = new long[count];
+            final List<T> list = new ArrayList<>(count);
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                ids[list.size()] = cursor.getLong(idIndex);
+                list.add(mMapper.map(cursor));
+            }
+            items = Collections.unmodifiableList(list);
+        } finally {
+            cursor.close();
+        }
+
+        final ChangeSet changeSet = ChangeSet.compute(mPreviousIds, mPreviousItems, ids, items);
+        mReplacedIds = mPreviousIds;
+        mReplacedItems = mPreviousItems;
+        mPreviousIds = ids;
+        mPreviousItems = items;
+        return new SnapshotDiff<>(items, changeSet);
+    }
+
+    @Override
+    public void discard(@NonNull final SnapshotDiff<T> item) {
+        // Items are converted and then emitted or discarded one at a time
+        if (item.getItems() == mPreviousItems) {
+            mPreviousIds = mReplacedIds;
+            mPreviousItems = mReplacedItems;
+        }
+    }
+}
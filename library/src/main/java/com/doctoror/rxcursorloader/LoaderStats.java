@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts content change notifications received by loaders, to check how many reloads a
+ * {@link NotificationFilter} or a narrower {@link RxCursorLoader.Query} saves, and times the
+ * {@link RxCursorLoader.Options.Builder#setWarm(boolean) warming} of loaded
+ * {@link android.database.Cursor}s, and counts {@link android.database.Cursor}s closed by
+ * {@link RxCursorLoader.Options.Builder#setMaxBufferedCursors(int) backpressure}.
+ * <p>
+ * Counts for every loader created with the {@link RxCursorLoader.Options} it is set to. Use a
+ * separate instance per loader to get per-loader counts.
+ *
+ * @see RxCursorLoader.Options.Builder#setStats(LoaderStats)
+ */
+public final class LoaderStats {
+
+    private final AtomicLong mAcceptedNotificationCount = new AtomicLong();
+
+    private final AtomicLong mDroppedNotificationCount = new AtomicLong();
+
+    private final AtomicLong mWarmCount = new AtomicLong();
+
+    private final AtomicLong mTotalWarmNanos = new AtomicLong();
+
+    private volatile long mLastWarmNanos;
+
+    private final AtomicLong mDroppedCursorCount = new AtomicLong();
+
+    void onNotificationAccepted() {
+        mAcceptedNotificationCount.incrementAndGet();
+    }
+
+    void onNotificationDropped() {
+        mDroppedNotificationCount.incrementAndGet();
+    }
+
+    void onCursorWarmed(final long nanos) {
+        mLastWarmNanos = nanos;
+        mTotalWarmNanos.addAndGet(nanos);
+        mWarmCount.incrementAndGet();
+    }
+
+    void onCursorDropped() {
+        mDroppedCursorCount.incrementAndGet();
+    }
+
+    /**
+     * @return the number of notifications that requested a reload
+     */
+    public long getAcceptedNotificationCount() {
+        return mAcceptedNotificationCount.get();
+    }
+
+    /**
+     * @return the number of notifications dropped by the {@link NotificationFilter}
+     */
+    public long getDroppedNotificationCount() {
+        return mDroppedNotificationCount.get();
+    }
+
+    /**
+     * @return the number of {@link android.database.Cursor}s warmed on the loader
+     * {@link io.reactivex.Scheduler}
+     * @see RxCursorLoader.Options.Builder#setWarm(boolean)
+     */
+    public long getWarmCount() {
+        return mWarmCount.get();
+    }
+
+    /**
+     * @return how long the latest warm took in nanoseconds, 0 if none
+     */
+    public long getLastWarmNanos() {
+        return mLastWarmNanos;
+    }
+
+    /**
+     * @return how long all warms took in nanoseconds
+     */
+    public long getTotalWarmNanos() {
+        return mTotalWarmNanos.get();
+    }
+
+    /**
+     * @return the number of loaded {@link android.database.Cursor}s closed without being
+     * delivered because the subscriber fell behind
+     * @see RxCursorLoader.Options.Builder#setMaxBufferedCursors(int)
+     */
+    public long getDroppedCursorCount() {
+        return mDroppedCursorCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "LoaderStats{" +
+                "acceptedNotificationCount=" + mAcceptedNotificationCount.get() +
+                ", droppedNotificationCount=" + mDroppedNotificationCount.get() +
+                ", warmCount=" + mWarmCount.get() +
+                ", lastWarmNanos=" + mLastWarmNanos +
+                ", totalWarmNanos=" + mTotalWarmNanos.get() +
+                ", droppedCursorCount=" + mDroppedCursorCount.get() +
+                '}';
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+/**
+ * Open addressing hash map from primitive long keys to non-negative int values. Avoids boxing
+ * when indexing tens of thousands of row ids.
+ */
+final class LongIntMap {
+
+    static final int NO_VALUE = -1;
+
+    private final long[] mKeys;
+
+    /**
+     * Values shifted by one so that zero marks an empty slot
+     */
+    private final int[] mValues;
+
+    private final int mMask;
+
+    private int mSize;
+
+    /**
+     * @param expectedSize the number of entries to be put without exceeding half the capacity
+     */
+    LongIntMap(final int expectedSize) {
+        int capacity = 2;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        mMask = capacity - 1;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Puts the value unless the key is already mapped.
+     *
+     * @param key   the key
+     * @param value the non-negative value
+     * @return true if the value was put, false if the key is already mapped
+     * @throws IllegalArgumentException if value is negative
+     * @throws IllegalStateException    if the map is full
+     */
+    boolean putIfAbsent(final long key, final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must not be negative");
+        }
+        int slot = slot(key);
+        while (mValues[slot] != 0) {
+            if (mKeys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        if (mSize == mMask) {
+            throw new IllegalStateException("Map is full");
+        }
+        mKeys[slot] = key;
+        mValues[slot] = value + 1;
+        mSize++;
+        return true;
+    }
+
+    /**
+     * @param key the key
+     * @return the value mapped to the key, or {@link #NO_VALUE} if not mapped
+     */
+    int get(final long key) {
+        int slot = slot(key);
+        while (mValues[slot] != 0) {
+            if (mKeys[slot] == key) {
+                return mValues[slot] - 1;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return NO_VALUE;
+    }
+
+    private int slot(final long key) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mMask;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Receives loader timings and counts, for example to feed latency histograms. Installed once
+ * per process with {@link RxCursorLoader#setMetricsListener(MetricsListener)}.
+ * <p>
+ * Methods are called on loader and observer threads, so they must be thread safe and fast.
+ */
+public interface MetricsListener {
+
+    /**
+     * Called after a query of a {@code flowable} or {@code single} loader returned a
+     * {@link android.database.Cursor} and before it is converted or emitted.
+     *
+     * @param query   the loaded {@link RxCursorLoader.Query}
+     * @param metrics the {@link QueryMetrics} of the query
+     */
+    void onQueryCompleted(@NonNull RxCursorLoader.Query query, @NonNull QueryMetrics metrics);
+
+    /**
+     * Called after a {@code flowable} loader emitted a reload caused by content change
+     * notifications.
+     *
+     * @param query                      the loaded {@link RxCursorLoader.Query}
+     * @param notificationToEmitNanos    the time from the first notification the reload
+     *                                   served to the end of {@code onNext}
+     * @param coalescedNotificationCount the number of further notifications served by the
+     *                                   same reload instead of a reload of their own
+     */
+    void onReloadEmitted(
+            @NonNull RxCursorLoader.Query query,
+            long notificationToEmitNanos,
+            int coalescedNotificationCount);
+
+    /**
+     * Called when a {@code flowable} loader dropped a notification because of its
+     * {@link NotificationFilter}, skipping the reload.
+     *
+     * @param query the loaded {@link RxCursorLoader.Query}
+     * @param uri   the changed {@link Uri}
+     */
+    void onNotificationDropped(@NonNull RxCursorLoader.Query query, @Nullable Uri uri);
+}
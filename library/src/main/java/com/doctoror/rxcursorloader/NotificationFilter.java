@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+/**
+ * Decides whether a content change notification can affect the loaded {@link Cursor}.
+ * Notifications that are not accepted are dropped before any reload is scheduled.
+ * <p>
+ * Notifications without a {@link Uri}, like the ones delivered before API 16, are always
+ * accepted.
+ *
+ * @see RxCursorLoader.Options.Builder#setNotificationFilter(NotificationFilter)
+ */
+public interface NotificationFilter {
+
+    /**
+     * Called on the observer thread, so it should be fast.
+     *
+     * @param uri the changed {@link Uri}
+     * @return true to reload, false to drop the notification
+     */
+    boolean accept(@NonNull Uri uri);
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+
+import static com.doctoror.rxcursorloader.RxCursorLoader.TAG;
+
+/**
+ * Process-wide pool of {@link android.os.Looper} threads that host {@link ContentObserver}s of
+ * all loaders.
+ * <p>
+ * Every loader acquires a {@link Lease} for as long as its observer is registered. Threads are
+ * started lazily when the first lease is assigned to them and quit when their last lease is
+ * released, so an idle process runs no observer threads at all.
+ */
+final class ObserverDispatcher {
+
+    static final int DEFAULT_THREAD_COUNT = 2;
+
+    private static final ObserverDispatcher INSTANCE = new ObserverDispatcher();
+
+    @NonNull
+    static ObserverDispatcher getInstance() {
+        return INSTANCE;
+    }
+
+    private final Object mLock = new Object();
+
+    private Worker[] mWorkers = new Worker[DEFAULT_THREAD_COUNT];
+
+    private int mLiveThreadCount;
+
+    private int mThreadSequence;
+
+    ObserverDispatcher() {
+
+    }
+
+    /**
+     * Sets the maximum number of threads. Threads that are already running above the new limit
+     * keep serving their current leases and quit once those are released.
+     *
+     * @param count the maximum number of threads, must be positive
+     * @throws IllegalArgumentException if count is less than one
+     */
+    void setThreadCount(final int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Thread count must be positive, was " + count);
+        }
+        synchronized (mLock) {
+            if (mWorkers.length != count) {
+                final Worker[] workers = new Worker[count];
+                System.arraycopy(mWorkers, 0, workers, 0, Math.min(count, mWorkers.length));
+                mWorkers = workers;
+            }
+        }
+    }
+
+    int getThreadCount() {
+        synchronized (mLock) {
+            return mWorkers.length;
+        }
+    }
+
+    /**
+     * @return the number of currently running observer threads
+     */
+    int getLiveThreadCount() {
+        synchronized (mLock) {
+            return mLiveThreadCount;
+        }
+    }
+
+    /**
+     * Assigns the caller to the least loaded thread, starting it if necessary.
+     *
+     * @return the {@link Lease} that must be released when the observer is unregistered
+     */
+    @NonNull
+    Lease acquire() {
+        synchronized (mLock) {
+            int index = 0;
+            for (int i = 0; i < mWorkers.length; i++) {
+                final Worker worker = mWorkers[i];
+                if (worker == null) {
+                    index = i;
+                    break;
+                }
+                if (worker.mLeaseCount < mWorkers[index].mLeaseCount) {
+                    index = i;
+                }
+            }
+
+            Worker worker = mWorkers[index];
+            if (worker == null) {
+                worker = new Worker(TAG + ".ObserverThread-" + (++mThreadSequence));
+                mWorkers[index] = worker;
+                mLiveThreadCount++;
+            }
+            worker.mLeaseCount++;
+            return new Lease(worker);
+        }
+    }
+
+    private void release(@NonNull final Worker worker) {
+        synchronized (mLock) {
+            worker.mLeaseCount--;
+            if (worker.mLeaseCount == 0) {
+                for (int i = 0; i < mWorkers.length; i++) {
+                    if (mWorkers[i] == worker) {
+                        mWorkers[i] = null;
+                        break;
+                    }
+                }
+                mLiveThreadCount--;
+                worker.mThread.quit();
+            }
+        }
+    }
+
+    private static final class Worker {
+
+        @NonNull
+        final HandlerThread mThread;
+
+        @NonNull
+        final Handler mHandler;
+
+        int mLeaseCount;
+
+        Worker(@NonNull final String name) {
+            mThread = new HandlerThread(name);
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper());
+        }
+    }
+
+    /**
+     * A reference to an observer thread. Must be released exactly once.
+     */
+    final class Lease {
+
+        private Worker mWorker;
+
+        Lease(@NonNull final Worker worker) {
+            mWorker = worker;
+        }
+
+        /**
+         * @return the {@link Handler} to create the {@link ContentObserver} with
+         * @throws IllegalStateException if this lease is already released
+         */
+        @NonNull
+        Handler getHandler() {
+            final Worker worker = mWorker;
+            if (worker == null) {
+                throw new IllegalStateException("Lease is already released");
+            }
+            return worker.mHandler;
+        }
+
+        void release() {
+            final Worker worker;
+            synchronized (mLock) {
+                worker = mWorker;
+                mWorker = null;
+            }
+            if (worker != null) {
+                ObserverDispatcher.this.release(worker);
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.annotation.TargetApi;
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.DeadObjectException;
+import android.os.RemoteException;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.doctoror.rxcursorloader.RxCursorLoader.TAG;
+import static com.doctoror.rxcursorloader.RxCursorLoader.isDebugLoggingEnabled;
+
+/**
+ * Keeps unstable {@link ContentProviderClient}s per {@link ContentResolver} and authority for
+ * as long as any {@link Lease} on them is held, so that queries skip the provider lookup and
+ * acquisition that {@link ContentResolver#query(Uri, String[], String, String[], String)} does
+ * on every call. A live loader holds a {@link Lease} until it is released, and a
+ * {@link io.reactivex.Single} holds one while it queries.
+ * <p>
+ * A {@link ContentProviderClient} is not thread safe, so every query takes an idle client for
+ * itself and returns it when done. Queries that run one after another reuse one client, and
+ * concurrent queries each acquire their own.
+ * <p>
+ * The clients are unstable, so the death of the provider process does not kill this process.
+ * A query that finds the provider dead releases its client and retries once with a newly
+ * acquired one.
+ * <p>
+ * Requires API 16 and above.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+final class ProviderClients {
+
+    /**
+     * The clients by {@link ContentResolver} and authority. Guards the state of all
+     * {@link Entry}s.
+     */
+    private static final Map<Key, Entry> sEntries = new HashMap<>();
+
+    private ProviderClients() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Acquires a {@link Lease} on the clients for the authority of the {@link Uri}. The clients
+     * themselves are acquired by the queries.
+     *
+     * @param resolver the {@link ContentResolver} to acquire the clients with
+     * @param uri      the content {@link Uri} to query
+     * @return the {@link Lease}, or null if clients cannot be reused on this API level or the
+     * {@link Uri} has no authority
+     */
+    @Nullable
+    static Lease acquire(@NonNull final ContentResolver resolver, @NonNull final Uri uri) {
+        final String authority = uri.getAuthority();
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || authority == null) {
+            return null;
+        }
+        final Key key = new Key(resolver, authority);
+        synchronized (sEntries) {
+            Entry entry = sEntries.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                sEntries.put(key, entry);
+            }
+            entry.refCount++;
+            return new Lease(entry);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void releaseClient(@NonNull final ContentProviderClient client) {
+        // close() is API 24 and above
+        client.release();
+    }
+
+    static int getLiveClientCount() {
+        synchronized (sEntries) {
+            return sEntries.size();
+        }
+    }
+
+    /**
+     * Identifies the clients of an authority acquired with a {@link ContentResolver}. The
+     * {@link ContentResolver} is compared by identity.
+     */
+    private static final class Key {
+
+        @NonNull
+        final ContentResolver resolver;
+
+        @NonNull
+        final String authority;
+
+        Key(@NonNull final ContentResolver resolver, @NonNull final String authority) {
+            this.resolver = resolver;
+            this.authority = authority;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return resolver == key.resolver && authority.equals(key.authority);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(resolver) + authority.hashCode();
+        }
+    }
+
+    /**
+     * The clients of a {@link Key}. Guarded by {@link #sEntries}.
+     */
+    private static final class Entry {
+
+        @NonNull
+        final Key key;
+
+        int refCount;
+
+        /**
+         * True once the last {@link Lease} was released
+         */
+        boolean removed;
+
+        /**
+         * The clients no query is using
+         */
+        final ArrayDeque<ContentProviderClient> idle = new ArrayDeque<>();
+
+        Entry(@NonNull final Key key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A reference to the clients of one authority. Must be released when no longer used.
+     */
+    static final class Lease {
+
+        @NonNull
+        private final Entry mEntry;
+
+        /**
+         * Guarded by {@link #sEntries}
+         */
+        private boolean mReleased;
+
+        Lease(@NonNull final Entry entry) {
+            mEntry = entry;
+        }
+
+        /**
+         * Queries through a client, acquiring one if none is idle. Like
+         * {@link ContentResolver#query(Uri, String[], String, String[], String,
+         * CancellationSignal)}, returns null if the provider cannot be found or fails
+         * remotely. The {@link RxCursorLoader.Query} is passed as arguments
+         * {@link android.os.Bundle} if {@link QueryArgs#isSupported(RxCursorLoader.Query)}, and
+         * again with the legacy arguments if the provider did not honor them.
+         *
+         * @param query  the {@link RxCursorLoader.Query} to run
+         * @param signal the {@link CancellationSignal}
+         */
+        @Nullable
+        Cursor query(@NonNull final RxCursorLoader.Query query, @NonNull final Object signal) {
+            // The second attempt runs with a newly acquired client if the provider died
+            for (int attempt = 0; attempt < 2; attempt++) {
+                final ContentProviderClient client = takeClient();
+                if (client == null) {
+                    return null;
+                }
+                boolean died = false;
+                try {
+                    return query(client, query, (CancellationSignal) signal);
+                } catch (DeadObjectException e) {
+                    if (isDebugLoggingEnabled()) {
+                        Log.d(TAG, "Provider died, reacquiring " + mEntry.key.authority);
+                    }
+                    died = true;
+                } catch (RemoteException e) {
+                    Log.w(TAG, "Failed to query " + query.contentUri, e);
+                    return null;
+                } finally {
+                    if (died) {
+                        // Not idle, so no other query can be using it
+                        releaseClient(client);
+                    } else {
+                        returnClient(client);
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Nullable
+        private static Cursor query(
+                @NonNull final ContentProviderClient client,
+                @NonNull final RxCursorLoader.Query query,
+                @NonNull final CancellationSignal signal) throws RemoteException {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && QueryArgs.isSupported(query)) {
+                final Cursor c = Api26.query(client, query, signal);
+                if (QueryArgs.isHonored(query, c)) {
+                    return c;
+                }
+                c.close();
+            }
+            return client.query(query.contentUri, query.projection, query.selection,
+                    query.selectionArgs, query.legacySortOrder(), signal);
+        }
+
+        /**
+         * Takes an idle client, or acquires a new one. The client must be passed to
+         * {@link #returnClient(ContentProviderClient)} after the query.
+         *
+         * @return the client for exclusive use, null if the provider cannot be found or the
+         * {@link Lease} is released
+         */
+        @Nullable
+        private ContentProviderClient takeClient() {
+            synchronized (sEntries) {
+                if (mReleased) {
+                    return null;
+                }
+                final ContentProviderClient idle = mEntry.idle.poll();
+                if (idle != null) {
+                    return idle;
+                }
+            }
+
+            // Acquiring may start the provider process, so do not hold the lock
+            return mEntry.key.resolver.acquireUnstableContentProviderClient(
+                    mEntry.key.authority);
+        }
+
+        /**
+         * Makes the client idle, or releases it if the last {@link Lease} was released.
+         */
+        private void returnClient(@NonNull final ContentProviderClient client) {
+            synchronized (sEntries) {
+                if (!mEntry.removed) {
+                    mEntry.idle.push(client);
+                    return;
+                }
+            }
+            releaseClient(client);
+        }
+
+        /**
+         * Releases the reference, and the idle clients if it was the last one. A client that a
+         * query is still using is released when the query returns it.
+         */
+        void release() {
+            final ContentProviderClient[] idle;
+            synchronized (sEntries) {
+                if (mReleased) {
+                    return;
+                }
+                mReleased = true;
+                if (--mEntry.refCount != 0) {
+                    return;
+                }
+                sEntries.remove(mEntry.key);
+                mEntry.removed = true;
+                idle = mEntry.idle.toArray(new ContentProviderClient[mEntry.idle.size()]);
+                mEntry.idle.clear();
+            }
+            for (final ContentProviderClient client : idle) {
+                releaseClient(client);
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private static final class Api26 {
+
+        @Nullable
+        static Cursor query(
+                @NonNull final ContentProviderClient client,
+                @NonNull final RxCursorLoader.Query query,
+                @NonNull final CancellationSignal signal) throws RemoteException {
+            return client.query(query.contentUri, query.projection,
+                    QueryArgs.toBundle(query), signal);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Passes a {@link RxCursorLoader.Query} as the query arguments {@link Bundle} of API 26.
+ * <p>
+ * A provider that does not report the limit and offset in
+ * {@link ContentResolver#EXTRA_HONORED_ARGS}, like the default
+ * {@link android.content.ContentProvider} implementation, would return all rows. Its
+ * {@link Cursor} is discarded, and the query runs again with the limit and offset encoded into
+ * {@link RxCursorLoader.Query#legacySortOrder()}. The authority is then queried with the legacy
+ * arguments only.
+ */
+@TargetApi(Build.VERSION_CODES.O)
+final class QueryArgs {
+
+    /**
+     * The authorities that did not honor the limit or offset. Guarded by itself.
+     */
+    private static final Set<String> sUnhonoringAuthorities = new HashSet<>();
+
+    private QueryArgs() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return true if the {@link RxCursorLoader.Query} should be passed as a {@link Bundle}
+     */
+    static boolean isSupported(@NonNull final RxCursorLoader.Query query) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || !query.hasQueryArgs()) {
+            return false;
+        }
+        synchronized (sUnhonoringAuthorities) {
+            return !sUnhonoringAuthorities.contains(query.contentUri.getAuthority());
+        }
+    }
+
+    @NonNull
+    static Bundle toBundle(@NonNull final RxCursorLoader.Query query) {
+        final Bundle args = new Bundle();
+        if (query.selection != null) {
+            args.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, query.selection);
+        }
+        if (query.selectionArgs != null) {
+            args.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS,
+                    query.selectionArgs);
+        }
+        if (query.sortOrder != null) {
+            args.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, query.sortOrder);
+        }
+        if (query.sortColumns != null) {
+            args.putStringArray(ContentResolver.QUERY_ARG_SORT_COLUMNS, query.sortColumns);
+            args.putInt(ContentResolver.QUERY_ARG_SORT_DIRECTION, query.sortDescending
+                    ? ContentResolver.QUERY_SORT_DIRECTION_DESCENDING
+                    : ContentResolver.QUERY_SORT_DIRECTION_ASCENDING);
+        }
+        if (query.limit != 0) {
+            args.putInt(ContentResolver.QUERY_ARG_LIMIT, query.limit);
+        }
+        if (query.offset != 0) {
+            args.putInt(ContentResolver.QUERY_ARG_OFFSET, query.offset);
+        }
+        return args;
+    }
+
+    /**
+     * Tells whether the provider honored the limit and offset of the {@link Bundle} query. If
+     * not, the authority is remembered so that {@link #isSupported(RxCursorLoader.Query)}
+     * returns false for it, and the caller must close the {@link Cursor} and query again with
+     * the legacy arguments.
+     *
+     * @param query  the {@link RxCursorLoader.Query} that was loaded
+     * @param cursor the loaded {@link Cursor}
+     * @return false if the {@link Cursor} must be discarded
+     */
+    static boolean isHonored(
+            @NonNull final RxCursorLoader.Query query,
+            @Nullable final Cursor cursor) {
+        if (cursor == null || (query.limit == 0 && query.offset == 0)) {
+            return true;
+        }
+        final Bundle extras = cursor.getExtras();
+        final String[] honoredArgs = extras != null
+                ? extras.getStringArray(ContentResolver.EXTRA_HONORED_ARGS) : null;
+        final List<String> honored = honoredArgs != null
+                ? Arrays.asList(honoredArgs) : Arrays.<String>asList();
+
+        if ((query.limit == 0 || honored.contains(ContentResolver.QUERY_ARG_LIMIT))
+                && (query.offset == 0 || honored.contains(ContentResolver.QUERY_ARG_OFFSET))) {
+            return true;
+        }
+        synchronized (sUnhonoringAuthorities) {
+            sUnhonoringAuthorities.add(query.contentUri.getAuthority());
+        }
+        return false;
+    }
+
+    static void resetUnhonoringAuthorities() {
+        synchronized (sUnhonoringAuthorities) {
+            sUnhonoringAuthorities.clear();
+        }
+    }
+}
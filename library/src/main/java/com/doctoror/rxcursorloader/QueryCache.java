@@ -0,0 +1,545 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory cache of immutable {@link RowMapper} snapshots keyed by
+ * {@link RxCursorLoader.Query}, with LRU eviction bounded by entry count and estimated size.
+ * <p>
+ * The cache registers a {@link ContentObserver} for every cached content URI, honoring
+ * {@link RxCursorLoader.Query.Builder#setNotifyForDescendants(boolean)}, and marks the entries
+ * of that URI stale on change. Stale entries are never served. A snapshot is only cached if no
+ * change was notified since its query started.
+ * <p>
+ * Use the same cache instance with
+ * {@link RxCursorLoader#single(ContentResolver, RxCursorLoader.Query, RowMapper, QueryCache)}
+ * or {@link RxCursorLoader.Options.Builder#setCache(QueryCache)} so that a {@link RowMapper}
+ * snapshot loaded by one is served by the other. An entry is a hit only for the same
+ * {@link RowMapper} instance it was loaded with.
+ */
+public final class QueryCache {
+
+    /**
+     * The default maximum number of entries
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+
+    /**
+     * The default maximum estimated size in bytes
+     */
+    public static final long DEFAULT_MAX_SIZE_BYTES = 1024 * 1024;
+
+    /**
+     * The size per row assumed by {@link #DEFAULT_SIZE_ESTIMATOR}
+     */
+    public static final int DEFAULT_ROW_SIZE_BYTES = 128;
+
+    /**
+     * Estimates the size as {@link #DEFAULT_ROW_SIZE_BYTES} per row.
+     */
+    public static final SizeEstimator DEFAULT_SIZE_ESTIMATOR = new SizeEstimator() {
+
+        @Override
+        public long estimateSize(@NonNull final List<?> snapshot) {
+            return (long) snapshot.size() * DEFAULT_ROW_SIZE_BYTES;
+        }
+    };
+
+    /**
+     * Estimates the memory held by a snapshot.
+     */
+    public interface SizeEstimator {
+
+        /**
+         * @param snapshot the snapshot to estimate
+         * @return the estimated size in bytes, must not be negative
+         */
+        long estimateSize(@NonNull List<?> snapshot);
+    }
+
+    private final Object mLock = new Object();
+
+    /**
+     * Entries in access order, least recently used first
+     */
+    private final LinkedHashMap<RxCursorLoader.Query, Entry> mEntries
+            = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Observers that are notified for descendant URIs
+     */
+    private final Map<Uri, UriObserver> mObservers = new HashMap<>();
+
+    /**
+     * Observers that are notified for the exact URI only
+     */
+    private final Map<Uri, UriObserver> mExactObservers = new HashMap<>();
+
+    private final int mMaxEntries;
+
+    private final long mMaxSizeBytes;
+
+    @NonNull
+    private final SizeEstimator mSizeEstimator;
+
+    private long mSizeBytes;
+
+    private long mHitCount;
+
+    private long mMissCount;
+
+    private long mEvictionCount;
+
+    private QueryCache(
+            final int maxEntries,
+            final long maxSizeBytes,
+            @NonNull final SizeEstimator sizeEstimator) {
+        mMaxEntries = maxEntries;
+        mMaxSizeBytes = maxSizeBytes;
+        mSizeEstimator = sizeEstimator;
+    }
+
+    /**
+     * Returns the fresh snapshot of the {@link RxCursorLoader.Query} loaded with the
+     * {@link RowMapper}, and counts a hit or a miss.
+     *
+     * @return the snapshot, or null if not cached or stale
+     */
+    @Nullable
+    <T> List<T> get(
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final RowMapper<T> mapper) {
+        synchronized (mLock) {
+            final Entry entry = mEntries.get(query);
+            if (entry == null || entry.mapper != mapper) {
+                mMissCount++;
+                return null;
+            }
+            if (entry.stale) {
+                // A caller about to load it again holds a Ticket that keeps observing the URI
+                mEntries.remove(query);
+                onEntryRemoved(entry);
+                mMissCount++;
+                return null;
+            }
+            mHitCount++;
+            @SuppressWarnings("unchecked")
+            final List<T> snapshot = (List<T>) entry.snapshot;
+            return snapshot;
+        }
+    }
+
+    /**
+     * Starts observing the {@link RxCursorLoader.Query} content URI. Must be called before the
+     * query runs and the returned {@link Ticket} passed to
+     * {@link #put(Ticket, RxCursorLoader.Query, RowMapper, List)} with its result, or to
+     * {@link #release(Ticket)} if there is none.
+     *
+     * @return the {@link Ticket} that remembers the content version
+     */
+    @NonNull
+    Ticket prepare(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query) {
+        synchronized (mLock) {
+            final Map<Uri, UriObserver> observers = observers(query.notifyForDescendants);
+            UriObserver observer = observers.get(query.contentUri);
+            if (observer == null) {
+                observer = new UriObserver(resolver, query.contentUri,
+                        query.notifyForDescendants);
+                observers.put(query.contentUri, observer);
+                resolver.registerContentObserver(query.contentUri, query.notifyForDescendants,
+                        observer);
+            }
+            observer.ticketCount++;
+            return new Ticket(observer, observer.version);
+        }
+    }
+
+    /**
+     * Releases a {@link Ticket} that was not passed to
+     * {@link #put(Ticket, RxCursorLoader.Query, RowMapper, List)}. Releasing it again does
+     * nothing.
+     */
+    void release(@NonNull final Ticket ticket) {
+        synchronized (mLock) {
+            if (ticket.released) {
+                return;
+            }
+            ticket.released = true;
+            ticket.observer.ticketCount--;
+            unregisterIfUnused(ticket.observer);
+        }
+    }
+
+    /**
+     * Caches the snapshot unless the content changed since the {@link Ticket} was prepared,
+     * and releases the {@link Ticket}.
+     */
+    <T> void put(
+            @NonNull final Ticket ticket,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final RowMapper<T> mapper,
+            @NonNull final List<T> snapshot) {
+        final long size = mSizeEstimator.estimateSize(snapshot);
+        synchronized (mLock) {
+            if (!isValid(ticket)) {
+                release(ticket);
+                return;
+            }
+
+            final Entry entry = new Entry(ticket.observer, mapper, snapshot, size);
+            ticket.observer.entryCount++;
+            mSizeBytes += size;
+            release(ticket);
+
+            final Entry previous = mEntries.put(query, entry);
+            if (previous != null) {
+                onEntryRemoved(previous);
+            }
+
+            trimToSize();
+        }
+    }
+
+    /**
+     * @return true if the content did not change since the {@link Ticket} was prepared
+     */
+    boolean isValid(@NonNull final Ticket ticket) {
+        synchronized (mLock) {
+            return isRegistered(ticket.observer) && ticket.observer.version == ticket.version;
+        }
+    }
+
+    /**
+     * Must be called while holding {@link #mLock}.
+     */
+    private void trimToSize() {
+        final Iterator<Map.Entry<RxCursorLoader.Query, Entry>> iterator
+                = mEntries.entrySet().iterator();
+        while ((mEntries.size() > mMaxEntries || mSizeBytes > mMaxSizeBytes)
+                && iterator.hasNext()) {
+            final Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            onEntryRemoved(eldest);
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Stops observing the entry URI if no other entry or {@link Ticket} has it. Must be called
+     * while holding {@link #mLock}.
+     */
+    private void onEntryRemoved(@NonNull final Entry entry) {
+        mSizeBytes -= entry.size;
+        entry.observer.entryCount--;
+        unregisterIfUnused(entry.observer);
+    }
+
+    /**
+     * Must be called while holding {@link #mLock}.
+     */
+    private void unregisterIfUnused(@NonNull final UriObserver observer) {
+        if (observer.entryCount == 0 && observer.ticketCount == 0 && isRegistered(observer)) {
+            observers(observer.notifyForDescendants).remove(observer.uri);
+            observer.unregister();
+        }
+    }
+
+    /**
+     * Must be called while holding {@link #mLock}.
+     *
+     * @return false if the observer was unregistered
+     */
+    private boolean isRegistered(@NonNull final UriObserver observer) {
+        return observers(observer.notifyForDescendants).get(observer.uri) == observer;
+    }
+
+    /**
+     * Must be called while holding {@link #mLock}.
+     */
+    @NonNull
+    private Map<Uri, UriObserver> observers(final boolean notifyForDescendants) {
+        return notifyForDescendants ? mObservers : mExactObservers;
+    }
+
+    /**
+     * Removes all entries and stops observing all URIs. The counters are not reset.
+     */
+    public void clear() {
+        synchronized (mLock) {
+            mEntries.clear();
+            mSizeBytes = 0;
+            for (final UriObserver observer : mObservers.values()) {
+                observer.unregister();
+            }
+            mObservers.clear();
+            for (final UriObserver observer : mExactObservers.values()) {
+                observer.unregister();
+            }
+            mExactObservers.clear();
+        }
+    }
+
+    /**
+     * @return the number of cached entries, including stale ones
+     */
+    public int size() {
+        synchronized (mLock) {
+            return mEntries.size();
+        }
+    }
+
+    /**
+     * @return the estimated size of all cached entries in bytes
+     */
+    public long getSizeBytes() {
+        synchronized (mLock) {
+            return mSizeBytes;
+        }
+    }
+
+    /**
+     * @return the number of lookups that returned a snapshot
+     */
+    public long getHitCount() {
+        synchronized (mLock) {
+            return mHitCount;
+        }
+    }
+
+    /**
+     * @return the number of lookups that found no entry or a stale one
+     */
+    public long getMissCount() {
+        synchronized (mLock) {
+            return mMissCount;
+        }
+    }
+
+    /**
+     * @return the number of entries evicted to stay within the bounds
+     */
+    public long getEvictionCount() {
+        synchronized (mLock) {
+            return mEvictionCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            return "QueryCache{" +
+                    "size=" + mEntries.size() +
+                    ", sizeBytes=" + mSizeBytes +
+                    ", hitCount=" + mHitCount +
+                    ", missCount=" + mMissCount +
+                    ", evictionCount=" + mEvictionCount +
+                    '}';
+        }
+    }
+
+    /**
+     * The content version of a URI at the time a query started.
+     */
+    final class Ticket {
+
+        @NonNull
+        final UriObserver observer;
+
+        final long version;
+
+        /**
+         * Guarded by {@link #mLock}
+         */
+        boolean released;
+
+        Ticket(@NonNull final UriObserver observer, final long version) {
+            this.observer = observer;
+            this.version = version;
+        }
+
+        /**
+         * @return true if the content did not change since this {@link Ticket} was prepared
+         */
+        boolean isValid() {
+            return QueryCache.this.isValid(this);
+        }
+    }
+
+    private static final class Entry {
+
+        @NonNull
+        final UriObserver observer;
+
+        @NonNull
+        final RowMapper<?> mapper;
+
+        @NonNull
+        final List<?> snapshot;
+
+        final long size;
+
+        boolean stale;
+
+        Entry(
+                @NonNull final UriObserver observer,
+                @NonNull final RowMapper<?> mapper,
+                @NonNull final List<?> snapshot,
+                final long size) {
+            this.observer = observer;
+            this.mapper = mapper;
+            this.snapshot = snapshot;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Observes a content URI and marks its entries stale on change. Without a {@link
+     * android.os.Handler}, changes are delivered on the notifying thread.
+     * <p>
+     * An observer is unregistered once it has no entries and no unreleased {@link Ticket}s.
+     */
+    final class UriObserver extends ContentObserver {
+
+        @NonNull
+        final ContentResolver resolver;
+
+        @NonNull
+        final Uri uri;
+
+        final boolean notifyForDescendants;
+
+        /**
+         * Incremented on every change. Guarded by {@link #mLock}.
+         */
+        long version;
+
+        /**
+         * The number of entries with this URI. Guarded by {@link #mLock}.
+         */
+        int entryCount;
+
+        /**
+         * The number of unreleased {@link Ticket}s. Guarded by {@link #mLock}.
+         */
+        int ticketCount;
+
+        UriObserver(
+                @NonNull final ContentResolver resolver,
+                @NonNull final Uri uri,
+                final boolean notifyForDescendants) {
+            super(null);
+            this.resolver = resolver;
+            this.uri = uri;
+            this.notifyForDescendants = notifyForDescendants;
+        }
+
+        @Override
+        public void onChange(final boolean selfChange) {
+            synchronized (mLock) {
+                version++;
+                for (final Entry entry : mEntries.values()) {
+                    if (entry.observer == this) {
+                        entry.stale = true;
+                    }
+                }
+            }
+        }
+
+        void unregister() {
+            resolver.unregisterContentObserver(this);
+        }
+    }
+
+    /**
+     * {@link QueryCache} builder.
+     */
+    public static final class Builder {
+
+        private int mMaxEntries = DEFAULT_MAX_ENTRIES;
+        private long mMaxSizeBytes = DEFAULT_MAX_SIZE_BYTES;
+        private SizeEstimator mSizeEstimator = DEFAULT_SIZE_ESTIMATOR;
+
+        public Builder() {
+
+        }
+
+        /**
+         * @param maxEntries the maximum number of entries, {@link #DEFAULT_MAX_ENTRIES} by
+         *                   default
+         * @throws IllegalArgumentException if maxEntries is not positive
+         */
+        @NonNull
+        public Builder setMaxEntries(final int maxEntries) {
+            if (maxEntries < 1) {
+                throw new IllegalArgumentException("Max entries must be positive");
+            }
+            mMaxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * @param maxSizeBytes the maximum estimated size of all entries,
+         *                     {@link #DEFAULT_MAX_SIZE_BYTES} by default
+         * @throws IllegalArgumentException if maxSizeBytes is not positive
+         */
+        @NonNull
+        public Builder setMaxSizeBytes(final long maxSizeBytes) {
+            if (maxSizeBytes < 1) {
+                throw new IllegalArgumentException("Max size must be positive");
+            }
+            mMaxSizeBytes = maxSizeBytes;
+            return this;
+        }
+
+        /**
+         * @param sizeEstimator the {@link SizeEstimator}, {@link #DEFAULT_SIZE_ESTIMATOR} by
+         *                      default
+         */
+        @NonNull
+        public Builder setSizeEstimator(@NonNull final SizeEstimator sizeEstimator) {
+            //noinspection ConstantConditions
+            if (sizeEstimator == null) {
+                throw new NullPointerException("SizeEstimator must not be null");
+            }
+            mSizeEstimator = sizeEstimator;
+            return this;
+        }
+
+        /**
+         * Creates the {@link QueryCache}
+         *
+         * @return the {@link QueryCache}
+         */
+        @NonNull
+        public QueryCache create() {
+            return new QueryCache(mMaxEntries, mMaxSizeBytes, mSizeEstimator);
+        }
+    }
+}
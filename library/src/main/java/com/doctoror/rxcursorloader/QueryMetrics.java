@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+/**
+ * Timings and size of a single query, reported to {@link MetricsListener}.
+ */
+public final class QueryMetrics {
+
+    private final long mQueryNanos;
+    private final long mWindowFillNanos;
+    private final int mRowCount;
+    private final long mEstimatedBytes;
+
+    QueryMetrics(
+            final long queryNanos,
+            final long windowFillNanos,
+            final int rowCount,
+            final long estimatedBytes) {
+        mQueryNanos = queryNanos;
+        mWindowFillNanos = windowFillNanos;
+        mRowCount = rowCount;
+        mEstimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * Measures the {@link Cursor} and reports it to the {@link MetricsListener}. Closes the
+     * {@link Cursor} if either fails.
+     *
+     * @param listener   the {@link MetricsListener} to report to
+     * @param query      the loaded {@link RxCursorLoader.Query}
+     * @param cursor     the loaded {@link Cursor}
+     * @param queryNanos how long the query took
+     */
+    static void report(
+            @NonNull final MetricsListener listener,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final Cursor cursor,
+            final long queryNanos) {
+        try {
+            listener.onQueryCompleted(query, measure(cursor, queryNanos));
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Counts the rows, which fills the first window of SQLite backed {@link Cursor}s, and
+     * estimates the size of all rows from the first one. Leaves the {@link Cursor} before the
+     * first row.
+     *
+     * @param cursor     the loaded {@link Cursor}
+     * @param queryNanos how long the query took
+     * @return the {@link QueryMetrics}
+     */
+    @NonNull
+    static QueryMetrics measure(@NonNull final Cursor cursor, final long queryNanos) {
+        final long fillStart = System.nanoTime();
+        final int rowCount = cursor.getCount();
+        final long windowFillNanos = System.nanoTime() - fillStart;
+
+        long estimatedBytes = 0;
+        if (rowCount > 0 && cursor.moveToFirst()) {
+            estimatedBytes = estimateRowBytes(cursor) * rowCount;
+        }
+        cursor.moveToPosition(-1);
+        return new QueryMetrics(queryNanos, windowFillNanos, rowCount, estimatedBytes);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static long estimateRowBytes(@NonNull final Cursor cursor) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // Column types are unknown
+            return 0;
+        }
+        long bytes = 0;
+        final int columnCount = cursor.getColumnCount();
+        for (int i = 0; i < columnCount; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_STRING:
+                    final String string = cursor.getString(i);
+                    bytes += string != null ? string.length() * 2 : 0;
+                    break;
+
+                case Cursor.FIELD_TYPE_BLOB:
+                    final byte[] blob = cursor.getBlob(i);
+                    bytes += blob != null ? blob.length : 0;
+                    break;
+
+                case Cursor.FIELD_TYPE_INTEGER:
+                case Cursor.FIELD_TYPE_FLOAT:
+                    bytes += 8;
+                    break;
+
+                default:
+                    break;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return how long {@link android.content.ContentResolver#query} took in nanoseconds
+     */
+    public long getQueryNanos() {
+        return mQueryNanos;
+    }
+
+    /**
+     * @return how long counting the rows took in nanoseconds, which for SQLite backed
+     * {@link Cursor}s includes filling the first window
+     */
+    public long getWindowFillNanos() {
+        return mWindowFillNanos;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * @return the size of all rows estimated from the first one, in bytes. Always 0 before
+     * API 11.
+     */
+    public long getEstimatedBytes() {
+        return mEstimatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryMetrics{" +
+                "queryNanos=" + mQueryNanos +
+                ", windowFillNanos=" + mWindowFillNanos +
+                ", rowCount=" + mRowCount +
+                ", estimatedBytes=" + mEstimatedBytes +
+                '}';
+    }
+}
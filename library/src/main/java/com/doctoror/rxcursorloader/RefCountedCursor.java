@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.annotation.TargetApi;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DataSetObserver;
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+/**
+ * A {@link Cursor} shared by several holders. Each holder gets its own {@link Cursor} handle
+ * from {@link #acquire()} and the underlying {@link Cursor} is closed when the creator and all
+ * handles are released.
+ * <p>
+ * Every handle has its own position, so the holders can read concurrently. Reads are
+ * serialized on the underlying {@link Cursor}. A handle does not let its holder change what
+ * the others see: it does not expose the underlying {@link Cursor}, and requery, deactivate
+ * and {@link DataSetObserver}s are per-handle no-ops.
+ */
+final class RefCountedCursor implements SingleFlight.Shared<Cursor> {
+
+    @NonNull
+    private final Cursor mCursor;
+
+    private int mRefCount = 1;
+
+    /**
+     * Creates the shared {@link Cursor}. The creator holds the first reference and must
+     * {@link #release()} it when done.
+     *
+     * @param cursor the {@link Cursor} to share
+     */
+    RefCountedCursor(@NonNull final Cursor cursor) {
+        mCursor = cursor;
+    }
+
+    /**
+     * Acquires a new handle. Closing the handle releases the reference.
+     *
+     * @return the new handle
+     * @throws IllegalStateException if all references are already released
+     */
+    @NonNull
+    @Override
+    public Cursor acquire() {
+        synchronized (this) {
+            if (mRefCount == 0) {
+                throw new IllegalStateException("Cursor is already released");
+            }
+            mRefCount++;
+        }
+        return new Handle(mCursor);
+    }
+
+    /**
+     * Closes the handle, which releases its reference.
+     */
+    @Override
+    public void discard(@NonNull final Cursor view) {
+        view.close();
+    }
+
+    /**
+     * Releases a reference and closes the underlying {@link Cursor} if it was the last one.
+     */
+    @Override
+    public void release() {
+        final boolean close;
+        synchronized (this) {
+            if (mRefCount == 0) {
+                throw new IllegalStateException("Cursor is already released");
+            }
+            mRefCount--;
+            close = mRefCount == 0;
+        }
+        if (close) {
+            mCursor.close();
+        }
+    }
+
+    /**
+     * A view with its own position. Every read moves the underlying {@link Cursor} to the
+     * position of the handle while holding its lock.
+     * <p>
+     * The data of a handle never changes, so it never notifies {@link DataSetObserver}s.
+     */
+    private final class Handle extends CursorWrapper {
+
+        private int mPosition = -1;
+
+        private boolean mClosed;
+
+        Handle(@NonNull final Cursor cursor) {
+            super(cursor);
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (mClosed) {
+                    return;
+                }
+                mClosed = true;
+            }
+            release();
+        }
+
+        @Override
+        public boolean isClosed() {
+            synchronized (this) {
+                if (mClosed) {
+                    return true;
+                }
+            }
+            return super.isClosed();
+        }
+
+        @Override
+        public int getCount() {
+            synchronized (mCursor) {
+                return mCursor.getCount();
+            }
+        }
+
+        @Override
+        public int getPosition() {
+            return mPosition;
+        }
+
+        @Override
+        public boolean moveToPosition(final int position) {
+            final int count = getCount();
+            if (position >= count) {
+                mPosition = count;
+                return false;
+            }
+            if (position < 0) {
+                mPosition = -1;
+                return false;
+            }
+            mPosition = position;
+            return true;
+        }
+
+        @Override
+        public boolean move(final int offset) {
+            return moveToPosition(mPosition + offset);
+        }
+
+        @Override
+        public boolean moveToFirst() {
+            return moveToPosition(0);
+        }
+
+        @Override
+        public boolean moveToLast() {
+            return moveToPosition(getCount() - 1);
+        }
+
+        @Override
+        public boolean moveToNext() {
+            return moveToPosition(mPosition + 1);
+        }
+
+        @Override
+        public boolean moveToPrevious() {
+            return moveToPosition(mPosition - 1);
+        }
+
+        @Override
+        public boolean isFirst() {
+            return mPosition == 0 && getCount() != 0;
+        }
+
+        @Override
+        public boolean isLast() {
+            final int count = getCount();
+            return mPosition == count - 1 && count != 0;
+        }
+
+        @Override
+        public boolean isBeforeFirst() {
+            return getCount() == 0 || mPosition == -1;
+        }
+
+        @Override
+        public boolean isAfterLast() {
+            final int count = getCount();
+            return count == 0 || mPosition == count;
+        }
+
+        /**
+         * Moves the underlying {@link Cursor} to the position of this handle. Must be called
+         * while holding the lock of the underlying {@link Cursor}.
+         */
+        private void moveShared() {
+            if (mCursor.getPosition() != mPosition) {
+                mCursor.moveToPosition(mPosition);
+            }
+        }
+
+        @Override
+        public byte[] getBlob(final int columnIndex) {
+            synchronized (mCursor) {
+                moveShared();
+                return mCursor.getBlob(columnIndex);
+            }
+        }
+
+        @Override
+        public String getString(final int columnIndex) {
+            synchronized (mCursor) {
+                moveShared();
+                return mCursor.getString(columnIndex);
+            }
+        }
+
+        @Override
+        public void copyStringToBuffer(final int columnIndex, final CharArrayBuffer buffer) {
+            synchronized (mCursor) {
+                moveShared();
+                mCursor.copyStringToBuffer(columnIndex, buffer);
+            }
+        }
+
+        @Override
+        public short getShort(final int columnIndex) {
+            synchronized (mCursor) {
+                moveShared();
+                return mCursor.getShort(columnIndex);
+            }
+        }
+
+        @Override
+        public int getInt(final int columnIndex) {
+            synchronized (mCursor) {
+                moveShared();
+                return mCursor.getInt(columnIndex);
+            }
+        }
+
+        @Override
+        public long getLong(final int columnIndex) {
+            synchronized (mCursor) {
+                moveShared();
+                return mCursor.getLong(columnIndex);
+            }
+        }
+
+        @Override
+        public float getFloat(final int columnIndex) {
+            synchronized (mCursor) {
+                moveShared();
+                return mCursor.getFloat(columnIndex);
+            }
+        }
+
+        @Override
+        public double getDouble(final int columnIndex) {
+            synchronized (mCursor) {
+                moveShared();
+                return mCursor.getDouble(columnIndex);
+            }
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        @Override
+        public int getType(final int columnIndex) {
+            synchronized (mCursor) {
+                moveShared();
+                return mCursor.getType(columnIndex);
+            }
+        }
+
+        @Override
+        public boolean isNull(final int columnIndex) {
+            synchronized (mCursor) {
+                moveShared();
+                return mCursor.isNull(columnIndex);
+            }
+        }
+
+        /**
+         * @throws UnsupportedOperationException always, the underlying {@link Cursor} is shared
+         */
+        @Override
+        public Cursor getWrappedCursor() {
+            throw new UnsupportedOperationException("The shared Cursor is not exposed");
+        }
+
+        /**
+         * Does nothing, so that the data of the other handles stays valid.
+         */
+        @Override
+        @Deprecated
+        public void deactivate() {
+            // The underlying Cursor is shared
+        }
+
+        /**
+         * Does nothing, so that the data of the other handles stays valid.
+         *
+         * @return false, since the data was not reloaded
+         */
+        @Override
+        @Deprecated
+        public boolean requery() {
+            return false;
+        }
+
+        @Override
+        public void registerDataSetObserver(final DataSetObserver observer) {
+            // The data of a handle never changes
+        }
+
+        @Override
+        public void unregisterDataSetObserver(final DataSetObserver observer) {
+            // Never registered
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.database.Cursor;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+/**
+ * A read-only view of the {@link Cursor} row emitted by
+ * {@link RxCursorLoader#rows(android.content.ContentResolver, RxCursorLoader.Query)}.
+ * <p>
+ * The same instance is reused for every row of a stream, so it is valid only until the next
+ * row is requested. Copy the values you need before requesting more or before handing the row
+ * over to another thread.
+ */
+public final class Row {
+
+    @NonNull
+    private final Cursor mCursor;
+
+    Row(@NonNull final Cursor cursor) {
+        mCursor = cursor;
+    }
+
+    /**
+     * @return the zero-based position of this row in the query result
+     */
+    public int getPosition() {
+        return mCursor.getPosition();
+    }
+
+    /**
+     * @return the number of columns
+     */
+    public int getColumnCount() {
+        return mCursor.getColumnCount();
+    }
+
+    /**
+     * @see Cursor#getColumnIndex(String)
+     */
+    public int getColumnIndex(@NonNull final String columnName) {
+        return mCursor.getColumnIndex(columnName);
+    }
+
+    /**
+     * @see Cursor#getColumnIndexOrThrow(String)
+     */
+    public int getColumnIndexOrThrow(@NonNull final String columnName) {
+        return mCursor.getColumnIndexOrThrow(columnName);
+    }
+
+    /**
+     * @see Cursor#getColumnName(int)
+     */
+    @NonNull
+    public String getColumnName(final int columnIndex) {
+        return mCursor.getColumnName(columnIndex);
+    }
+
+    /**
+     * Requires API 11 and above, like {@link Cursor#getType(int)}.
+     *
+     * @see Cursor#getType(int)
+     */
+    @RequiresApi(Build.VERSION_CODES.HONEYCOMB)
+    public int getType(final int columnIndex) {
+        return mCursor.getType(columnIndex);
+    }
+
+    /**
+     * @see Cursor#isNull(int)
+     */
+    public boolean isNull(final int columnIndex) {
+        return mCursor.isNull(columnIndex);
+    }
+
+    /**
+     * @see Cursor#getBlob(int)
+     */
+    @Nullable
+    public byte[] getBlob(final int columnIndex) {
+        return mCursor.getBlob(columnIndex);
+    }
+
+    /**
+     * @see Cursor#getString(int)
+     */
+    @Nullable
+    public String getString(final int columnIndex) {
+        return mCursor.getString(columnIndex);
+    }
+
+    /**
+     * @see Cursor#getShort(int)
+     */
+    public short getShort(final int columnIndex) {
+        return mCursor.getShort(columnIndex);
+    }
+
+    /**
+     * @see Cursor#getInt(int)
+     */
+    public int getInt(final int columnIndex) {
+        return mCursor.getInt(columnIndex);
+    }
+
+    /**
+     * @see Cursor#getLong(int)
+     */
+    public long getLong(final int columnIndex) {
+        return mCursor.getLong(columnIndex);
+    }
+
+    /**
+     * @see Cursor#getFloat(int)
+     */
+    public float getFloat(final int columnIndex) {
+        return mCursor.getFloat(columnIndex);
+    }
+
+    /**
+     * @see Cursor#getDouble(int)
+     */
+    public double getDouble(final int columnIndex) {
+        return mCursor.getDouble(columnIndex);
+    }
+
+    boolean moveToNext() {
+        return mCursor.moveToNext();
+    }
+
+    void close() {
+        mCursor.close();
+    }
+
+    @Override
+    public String toString() {
+        return "Row{position=" + mCursor.getPosition() + '}';
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+/**
+ * Maps a {@link Cursor} row to an immutable object.
+ *
+ * @param <T> the type of the mapped object
+ */
+public interface RowMapper<T> {
+
+    /**
+     * Maps the row the {@link Cursor} is currently positioned at. Must not move or close the
+     * {@link Cursor}.
+     *
+     * @param cursor the {@link Cursor} positioned at the row to map
+     * @return the mapped object
+     */
+    @NonNull
+    T map(@NonNull Cursor cursor);
+}
@@ -20,12 +20,19 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.reactivestreams.Publisher;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
 import io.reactivex.Observable;
 import io.reactivex.Observer;
 import io.reactivex.Scheduler;
@@ -81,6 +88,53 @@ public final class RxCursorLoader {
         return LOG_DEBUG;
     }
 
+    private static volatile MetricsListener sMetricsListener;
+
+    /**
+     * Installs the process wide {@link MetricsListener} that receives query timings, row counts
+     * and notification to emit delays of all {@code flowable} and {@code single} loaders.
+     * <p>
+     * While a listener is installed, every loaded {@link Cursor} counts its rows and reads its
+     * first row on the loader {@link Scheduler} to be measured. Without a listener, loaders do
+     * no measuring.
+     *
+     * @param listener the {@link MetricsListener}, null to uninstall
+     */
+    public static void setMetricsListener(@Nullable final MetricsListener listener) {
+        sMetricsListener = listener;
+    }
+
+    @Nullable
+    static MetricsListener getMetricsListener() {
+        return sMetricsListener;
+    }
+
+    /**
+     * Sets the maximum number of threads that deliver {@link android.database.ContentObserver}
+     * notifications for all {@link #flowable(ContentResolver, Query, Scheduler,
+     * BackpressureStrategy)} loaders in the process. The threads are started lazily and stop
+     * when no loader uses them.
+     * <p>
+     * Defaults to 2.
+     *
+     * @param threadCount the maximum number of observer threads
+     * @throws IllegalArgumentException if threadCount is less than one
+     */
+    public static void setObserverThreadCount(final int threadCount) {
+        ObserverDispatcher.getInstance().setThreadCount(threadCount);
+    }
+
+    /**
+     * Returns the number of currently running observer threads. This never exceeds the value
+     * passed to {@link #setObserverThreadCount(int)}, regardless of the number of live loaders,
+     * unless the limit was lowered while the threads were in use.
+     *
+     * @return the number of currently running observer threads
+     */
+    public static int getLiveObserverThreadCount() {
+        return ObserverDispatcher.getInstance().getLiveThreadCount();
+    }
+
     private RxCursorLoader() {
         throw new UnsupportedOperationException();
     }
@@ -94,7 +148,8 @@ public final class RxCursorLoader {
             @NonNull final ContentResolver resolver,
             @NonNull final Query query) {
         return RxCursorLoaderFlowableFactory
-                .create(resolver, query, Schedulers.io(), BackpressureStrategy.MISSING)
+                .create(resolver, query, Schedulers.io(), BackpressureStrategy.MISSING,
+                        Options.DEFAULT)
                 .toObservable();
     }
 
@@ -140,8 +195,153 @@ public final class RxCursorLoader {
             @NonNull final Query query,
             @NonNull final Scheduler scheduler,
             @NonNull final BackpressureStrategy backpressureStrategy) {
+        return flowable(resolver, query, scheduler, backpressureStrategy, Options.DEFAULT);
+    }
+
+    /**
+     * Same as {@link #flowable(ContentResolver, Query, Scheduler, BackpressureStrategy)}, but
+     * allows tuning the loader with {@link Options}.
+     *
+     * @param resolver  {@link ContentResolver} to use
+     * @param query     the {@link Query} to use
+     * @param scheduler the {@link Scheduler} to emit items from
+     * @param options   the {@link Options} to use
+     * @return new {@link Flowable}.
+     */
+    @NonNull
+    public static Flowable<Cursor> flowable(
+            @NonNull final ContentResolver resolver,
+            @NonNull final Query query,
+            @NonNull final Scheduler scheduler,
+            @NonNull final BackpressureStrategy backpressureStrategy,
+            @NonNull final Options options) {
         return RxCursorLoaderFlowableFactory
-                .create(resolver, query, scheduler, backpressureStrategy);
+                .create(resolver, query, scheduler, backpressureStrategy, options);
+    }
+
+    /**
+     * Same as {@link #flowable(ContentResolver, Query, Scheduler, BackpressureStrategy)}, but
+     * maps every loaded {@link Cursor} to an immutable {@link List} using the {@link RowMapper}.
+     * <p>
+     * Mapping is done on the loader {@link Scheduler} and the {@link Cursor} is closed right
+     * after, so unlike with raw {@link Cursor}s there is nothing to close.
+     *
+     * @param resolver  {@link ContentResolver} to use
+     * @param query     the {@link Query} to use
+     * @param scheduler the {@link Scheduler} to load and map items on
+     * @param mapper    the {@link RowMapper} to map every row with
+     * @param <T>       the type of the mapped rows
+     * @return new {@link Flowable}.
+     */
+    @NonNull
+    public static <T> Flowable<List<T>> flowable(
+            @NonNull final ContentResolver resolver,
+            @NonNull final Query query,
+            @NonNull final Scheduler scheduler,
+            @NonNull final BackpressureStrategy backpressureStrategy,
+            @NonNull final RowMapper<T> mapper) {
+        return flowable(resolver, query, scheduler, backpressureStrategy, Options.DEFAULT, mapper);
+    }
+
+    /**
+     * Same as {@link #flowable(ContentResolver, Query, Scheduler, BackpressureStrategy,
+     * RowMapper)}, but allows tuning the loader with {@link Options}.
+     * <p>
+     * When {@link Options.Builder#setShared(boolean)} is set, the query is shared, but every
+     * subscriber maps its own snapshot.
+     *
+     * @param resolver  {@link ContentResolver} to use
+     * @param query     the {@link Query} to use
+     * @param scheduler the {@link Scheduler} to load and map items on
+     * @param options   the {@link Options} to use
+     * @param mapper    the {@link RowMapper} to map every row with
+     * @param <T>       the type of the mapped rows
+     * @return new {@link Flowable}.
+     */
+    @NonNull
+    public static <T> Flowable<List<T>> flowable(
+            @NonNull final ContentResolver resolver,
+            @NonNull final Query query,
+            @NonNull final Scheduler scheduler,
+            @NonNull final BackpressureStrategy backpressureStrategy,
+            @NonNull final Options options,
+            @NonNull final RowMapper<T> mapper) {
+        return RxCursorLoaderFlowableFactory
+                .createMapped(resolver, query, scheduler, backpressureStrategy, options, mapper);
+    }
+
+    /**
+     * Creates a new {@link Flowable} that acts like
+     * {@link #flowable(ContentResolver, Query, Scheduler, BackpressureStrategy, Options,
+     * RowMapper)}, but also emits the {@link ChangeSet} between every snapshot and the
+     * previous one, so that only the changed rows need to be rebound.
+     * <p>
+     * Rows are matched by the value of the id column, which must be stable and unique, like
+     * {@link android.provider.BaseColumns#_ID}. Changed rows are detected by
+     * {@link Object#equals(Object)} of the mapped rows. The {@link ChangeSet} is computed on
+     * the loader {@link Scheduler}.
+     * <p>
+     * Every {@link ChangeSet} is relative to the previously emitted snapshot, so snapshots are
+     * never dropped and are buffered if the subscriber is slower than content changes.
+     *
+     * @param resolver  {@link ContentResolver} to use
+     * @param query     the {@link Query} to use. Must have the id column in the projection.
+     * @param scheduler the {@link Scheduler} to load, map and diff items on
+     * @param options   the {@link Options} to use
+     * @param idColumn  the name of the column with stable unique row ids
+     * @param mapper    the {@link RowMapper} to map every row with
+     * @param <T>       the type of the mapped rows
+     * @return new {@link Flowable}.
+     */
+    @NonNull
+    public static <T> Flowable<SnapshotDiff<T>> diffFlowable(
+            @NonNull final ContentResolver resolver,
+            @NonNull final Query query,
+            @NonNull final Scheduler scheduler,
+            @NonNull final Options options,
+            @NonNull final String idColumn,
+            @NonNull final RowMapper<T> mapper) {
+        return RxCursorLoaderFlowableFactory
+                .createDiff(resolver, query, scheduler, options, idColumn, mapper);
+    }
+
+    /**
+     * Create a new {@link Flowable} that loads the {@link Query} page by page as the subscriber
+     * requests more, and keeps the loaded pages up to date.
+     * <p>
+     * Every emission is an immutable snapshot of all rows loaded so far and consumes one
+     * requested item. While there is outstanding demand, the loader either refreshes the loaded
+     * pages after a content change, or loads the next page unless the end was reached. A
+     * content change that arrives with no outstanding demand only marks the loader dirty, and
+     * the loaded pages are refreshed on the next request.
+     * <p>
+     * Use a subscriber that requests one item every time it needs the next page, for example
+     * when the list is scrolled to the end. Requesting {@link Long#MAX_VALUE} loads every page.
+     * <p>
+     * By default the next page is selected by keyset, which reads only the rows of that page
+     * no matter how many were loaded before. Use
+     * {@link Paging.Builder#setOffsetPaging(boolean)} for providers that do not support keyset
+     * queries.
+     *
+     * @param resolver  {@link ContentResolver} to use
+     * @param query     the {@link Query} to use. The sort order, sort columns, limit and
+     *                  offset must not be set, they are defined by {@link Paging}.
+     * @param scheduler the {@link Scheduler} to load and map pages on
+     * @param paging    the {@link Paging} to use
+     * @param mapper    the {@link RowMapper} to map every row with
+     * @param <T>       the type of the mapped rows
+     * @return new {@link Flowable}.
+     * @throws IllegalArgumentException if the query has a sort order, sort columns, limit or
+     *                                  offset set
+     */
+    @NonNull
+    public static <T> Flowable<List<T>> paged(
+            @NonNull final ContentResolver resolver,
+            @NonNull final Query query,
+            @NonNull final Scheduler scheduler,
+            @NonNull final Paging paging,
+            @NonNull final RowMapper<T> mapper) {
+        return RxCursorLoaderPagedFactory.create(resolver, query, scheduler, paging, mapper);
     }
 
     /**
@@ -160,6 +360,145 @@ public final class RxCursorLoader {
         return RxCursorLoaderSingleFactory.single(resolver, query);
     }
 
+    /**
+     * Same as {@link #single(ContentResolver, Query)}, with {@link Options}. Only
+     * {@link Options.Builder#setWarm(boolean)}, {@link Options.Builder#setStats(LoaderStats)},
+     * {@link Options.Builder#setSingleFlight(boolean)} and
+     * {@link Options.Builder#setReuseProviderClient(boolean)} apply to a {@link Single}.
+     *
+     * @param resolver {@link ContentResolver} to use
+     * @param query    the {@link Query} to use
+     * @param options  the {@link Options} to use
+     * @return new {@link Single}.
+     */
+    @NonNull
+    public static Single<Cursor> single(
+            @NonNull final ContentResolver resolver,
+            @NonNull final Query query,
+            @NonNull final Options options) {
+        return RxCursorLoaderSingleFactory.single(resolver, query, options);
+    }
+
+    /**
+     * Create a new {@link Single} that loads the {@link Query} once and maps the result to an
+     * immutable {@link List} using the {@link RowMapper}. The {@link Cursor} is closed right
+     * after mapping.
+     * If the query returns null, {@link QueryReturnedNullException} is thrown.
+     *
+     * @param resolver {@link ContentResolver} to use
+     * @param query    the {@link Query} to use
+     * @param mapper   the {@link RowMapper} to map every row with
+     * @param <T>      the type of the mapped rows
+     * @return new {@link Single}.
+     */
+    @NonNull
+    public static <T> Single<List<T>> single(
+            @NonNull final ContentResolver resolver,
+            @NonNull final Query query,
+            @NonNull final RowMapper<T> mapper) {
+        return RxCursorLoaderSingleFactory.singleMapped(resolver, query, mapper);
+    }
+
+    /**
+     * Same as {@link #single(ContentResolver, Query, RowMapper)}, with {@link Options}. Only
+     * {@link Options.Builder#setSingleFlight(boolean)} and
+     * {@link Options.Builder#setReuseProviderClient(boolean)} apply.
+     *
+     * @param resolver {@link ContentResolver} to use
+     * @param query    the {@link Query} to use
+     * @param options  the {@link Options} to use
+     * @param mapper   the {@link RowMapper} to map every row with
+     * @param <T>      the type of the mapped rows
+     * @return new {@link Single}.
+     */
+    @NonNull
+    public static <T> Single<List<T>> single(
+            @NonNull final ContentResolver resolver,
+            @NonNull final Query query,
+            @NonNull final Options options,
+            @NonNull final RowMapper<T> mapper) {
+        return RxCursorLoaderSingleFactory.singleMapped(resolver, query, options, mapper);
+    }
+
+    /**
+     * Same as {@link #single(ContentResolver, Query, RowMapper)}, but serves a fresh snapshot
+     * from the {@link QueryCache} without querying, and caches the loaded snapshot otherwise.
+     *
+     * @param resolver {@link ContentResolver} to use
+     * @param query    the {@link Query} to use
+     * @param mapper   the {@link RowMapper} to map every row with
+     * @param cache    the {@link QueryCache} to use
+     * @param <T>      the type of the mapped rows
+     * @return new {@link Single}.
+     */
+    @NonNull
+    public static <T> Single<List<T>> single(
+            @NonNull final ContentResolver resolver,
+            @NonNull final Query query,
+            @NonNull final RowMapper<T> mapper,
+            @NonNull final QueryCache cache) {
+        return RxCursorLoaderSingleFactory.singleCached(resolver, query, mapper, cache);
+    }
+
+    /**
+     * Create a new {@link Flowable} that queries once and streams the rows without loading them
+     * all into memory. The {@link Cursor} is moved to the next row only when the subscriber
+     * requests it, and it is closed on complete, error or cancel.
+     * <p>
+     * The same {@link Row} instance is emitted for every row and is valid only until the next
+     * row is requested, so read the values you need in {@code onNext}.
+     * If the query returns null, {@link QueryReturnedNullException} is thrown.
+     *
+     * @param resolver {@link ContentResolver} to use
+     * @param query    the {@link Query} to use
+     * @return new {@link Flowable}.
+     */
+    @NonNull
+    public static Flowable<Row> rows(
+            @NonNull final ContentResolver resolver,
+            @NonNull final Query query) {
+        return RxCursorLoaderRowsFactory.rows(resolver, query);
+    }
+
+    /**
+     * Creates a {@link FlowableTransformer} that takes over the lifetimes of the emitted
+     * {@link Cursor}s, like {@link android.content.CursorLoader} does. The {@link Cursor}s are
+     * delivered on the given {@link Scheduler} in place of {@code observeOn}, and a
+     * {@link Cursor} is closed once the subscriber has returned from {@code onNext} with the
+     * next one, like {@link android.widget.CursorAdapter#swapCursor(Cursor)} does. On dispose
+     * or terminate the last {@link Cursor} is closed along with the ones still waiting to be
+     * delivered.
+     * <p>
+     * Apply it right before subscribing, with no other thread hop after it, otherwise a
+     * {@link Cursor} would be closed while the subscriber may still use it.
+     *
+     * @param observeOnScheduler the {@link Scheduler} to deliver the {@link Cursor}s on
+     * @param closeScheduler     the {@link Scheduler} to close replaced {@link Cursor}s on,
+     *                           so that closing does not block the subscriber thread
+     * @return new {@link FlowableTransformer}
+     */
+    @NonNull
+    public static FlowableTransformer<Cursor, Cursor> closeReplacedCursors(
+            @NonNull final Scheduler observeOnScheduler,
+            @NonNull final Scheduler closeScheduler) {
+        //noinspection ConstantConditions
+        if (observeOnScheduler == null) {
+            throw new NullPointerException("ObserveOn Scheduler param must not be null");
+        }
+        //noinspection ConstantConditions
+        if (closeScheduler == null) {
+            throw new NullPointerException("Close Scheduler param must not be null");
+        }
+        return new FlowableTransformer<Cursor, Cursor>() {
+
+            @Override
+            public Publisher<Cursor> apply(final Flowable<Cursor> upstream) {
+                return CloseReplacedCursorsOperator
+                        .observeOn(upstream, observeOnScheduler, closeScheduler);
+            }
+        };
+    }
+
     /**
      * Parameters for {@link RxCursorLoader}
      */
@@ -170,6 +509,11 @@ public final class RxCursorLoader {
         String selection;
         String[] selectionArgs;
         String sortOrder;
+        String[] sortColumns;
+        boolean sortDescending;
+        int limit;
+        int offset;
+        boolean notifyForDescendants = true;
 
         Query() {
 
@@ -181,6 +525,11 @@ public final class RxCursorLoader {
             selection = p.readString();
             selectionArgs = p.createStringArray();
             sortOrder = p.readString();
+            notifyForDescendants = p.readInt() != 0;
+            sortColumns = p.createStringArray();
+            sortDescending = p.readInt() != 0;
+            limit = p.readInt();
+            offset = p.readInt();
         }
 
         @Override
@@ -190,6 +539,53 @@ public final class RxCursorLoader {
             p.writeString(selection);
             p.writeStringArray(selectionArgs);
             p.writeString(sortOrder);
+            p.writeInt(notifyForDescendants ? 1 : 0);
+            p.writeStringArray(sortColumns);
+            p.writeInt(sortDescending ? 1 : 0);
+            p.writeInt(limit);
+            p.writeInt(offset);
+        }
+
+        /**
+         * @return true if the {@link Query} has arguments that the legacy
+         * {@link ContentResolver} query can only take encoded into the sort order
+         */
+        boolean hasQueryArgs() {
+            return sortColumns != null || limit != 0 || offset != 0;
+        }
+
+        /**
+         * Encodes the sort columns, limit and offset into an SQL sort order, for providers
+         * that only take the legacy query arguments. The limit and offset are appended to the
+         * ORDER BY clause, which SQLite backed providers pass through.
+         *
+         * @return the sort order to query with
+         */
+        @Nullable
+        String legacySortOrder() {
+            if (!hasQueryArgs()) {
+                return sortOrder;
+            }
+            final StringBuilder order = new StringBuilder(64);
+            if (sortColumns != null) {
+                final String direction = sortDescending ? " DESC" : " ASC";
+                for (int i = 0; i < sortColumns.length; i++) {
+                    if (i != 0) {
+                        order.append(", ");
+                    }
+                    order.append(sortColumns[i]).append(direction);
+                }
+            } else {
+                order.append(sortOrder);
+            }
+            if (limit != 0 || offset != 0) {
+                // SQLite takes a negative limit as no limit
+                order.append(" LIMIT ").append(limit != 0 ? limit : -1);
+                if (offset != 0) {
+                    order.append(" OFFSET ").append(offset);
+                }
+            }
+            return order.toString();
         }
 
         @Override
@@ -221,10 +617,25 @@ public final class RxCursorLoader {
                 return false;
             }
             // Probably incorrect - comparing Object[] arrays with Arrays.equals
-            //noinspection SimplifiableIfStatement
             if (!Arrays.equals(selectionArgs, query.selectionArgs)) {
                 return false;
             }
+            if (notifyForDescendants != query.notifyForDescendants) {
+                return false;
+            }
+            if (!Arrays.equals(sortColumns, query.sortColumns)) {
+                return false;
+            }
+            if (sortDescending != query.sortDescending) {
+                return false;
+            }
+            if (limit != query.limit) {
+                return false;
+            }
+            //noinspection SimplifiableIfStatement
+            if (offset != query.offset) {
+                return false;
+            }
             return sortOrder != null ? sortOrder.equals(query.sortOrder) : query.sortOrder == null;
 
         }
@@ -237,6 +648,11 @@ public final class RxCursorLoader {
             result = 31 * result + (selection != null ? selection.hashCode() : 0);
             result = 31 * result + Arrays.hashCode(selectionArgs);
             result = 31 * result + (sortOrder != null ? sortOrder.hashCode() : 0);
+            result = 31 * result + (notifyForDescendants ? 1 : 0);
+            result = 31 * result + Arrays.hashCode(sortColumns);
+            result = 31 * result + (sortDescending ? 1 : 0);
+            result = 31 * result + limit;
+            result = 31 * result + offset;
             return result;
         }
 
@@ -248,6 +664,11 @@ public final class RxCursorLoader {
                     ", mSelection='" + selection + '\'' +
                     ", mSelectionArgs=" + Arrays.toString(selectionArgs) +
                     ", mSortOrder='" + sortOrder + '\'' +
+                    ", mNotifyForDescendants=" + notifyForDescendants +
+                    ", mSortColumns=" + Arrays.toString(sortColumns) +
+                    ", mSortDescending=" + sortDescending +
+                    ", mLimit=" + limit +
+                    ", mOffset=" + offset +
                     '}';
         }
 
@@ -276,6 +697,11 @@ public final class RxCursorLoader {
             private String mSelection;
             private String[] mSelectionArgs;
             private String mSortOrder;
+            private String[] mSortColumns;
+            private boolean mSortDescending;
+            private int mLimit;
+            private int mOffset;
+            private boolean mNotifyForDescendants = true;
 
             public Builder() {
 
@@ -311,25 +737,615 @@ public final class RxCursorLoader {
                 return this;
             }
 
+            /**
+             * Sorts by the columns without writing SQL. On API 26 and above they are passed as
+             * {@link ContentResolver#QUERY_ARG_SORT_COLUMNS} and
+             * {@link ContentResolver#QUERY_ARG_SORT_DIRECTION}, on older versions they are
+             * encoded into the sort order. Must not be combined with
+             * {@link #setSortOrder(String)}.
+             *
+             * @param sortColumns the columns to sort by, null to not sort by columns
+             * @param descending  whether to sort in descending order
+             * @throws IllegalArgumentException if sortColumns is empty
+             */
+            @NonNull
+            public Builder setSortColumns(
+                    @Nullable final String[] sortColumns,
+                    final boolean descending) {
+                if (sortColumns != null && sortColumns.length == 0) {
+                    throw new IllegalArgumentException("Sort columns must not be empty");
+                }
+                mSortColumns = sortColumns;
+                mSortDescending = descending;
+                return this;
+            }
+
+            /**
+             * Limits the number of loaded rows. Requires {@link #setSortOrder(String)} or
+             * {@link #setSortColumns(String[], boolean)}.
+             * <p>
+             * On API 26 and above the limit is passed as {@link ContentResolver#QUERY_ARG_LIMIT}.
+             * If the provider does not report it in {@link ContentResolver#EXTRA_HONORED_ARGS},
+             * the loaded {@link Cursor} is closed and the query runs again with the limit
+             * appended to the sort order, and the authority is queried that way from then on.
+             * On older versions it is always appended to the sort order. The sort order
+             * encoding works for SQLite backed providers.
+             *
+             * @param limit the maximum number of rows, 0 for no limit
+             * @throws IllegalArgumentException if limit is negative
+             */
+            @NonNull
+            public Builder setLimit(final int limit) {
+                if (limit < 0) {
+                    throw new IllegalArgumentException("Limit must not be negative");
+                }
+                mLimit = limit;
+                return this;
+            }
+
+            /**
+             * Skips the given number of rows. Requires {@link #setSortOrder(String)} or
+             * {@link #setSortColumns(String[], boolean)}.
+             * <p>
+             * Passed like {@link #setLimit(int)}, as {@link ContentResolver#QUERY_ARG_OFFSET} on
+             * API 26 and above. If the provider does not honor it, the query runs again with
+             * the offset appended to the sort order.
+             *
+             * @param offset the number of rows to skip
+             * @throws IllegalArgumentException if offset is negative
+             */
+            @NonNull
+            public Builder setOffset(final int offset) {
+                if (offset < 0) {
+                    throw new IllegalArgumentException("Offset must not be negative");
+                }
+                mOffset = offset;
+                return this;
+            }
+
+            /**
+             * Sets whether changes to descendants of the content URI reload the {@link Query}.
+             * True by default. Disable it for a directory URI whose item URIs are notified
+             * separately, so that a change to a single item does not reload the whole
+             * directory.
+             *
+             * @param notifyForDescendants whether to observe descendant URIs
+             * @see ContentResolver#registerContentObserver(Uri, boolean,
+             * android.database.ContentObserver)
+             */
+            @NonNull
+            public Builder setNotifyForDescendants(final boolean notifyForDescendants) {
+                mNotifyForDescendants = notifyForDescendants;
+                return this;
+            }
+
             /**
              * Creates the {@link Query}
              *
              * @return the {@link Query}
-             * @throws IllegalStateException if content uri is null
+             * @throws IllegalStateException if content uri is null, if both sort order and
+             *                               sort columns are set, or if limit or offset is set
+             *                               without either
              */
             @NonNull
             public Query create() {
                 if (mContentUri == null) {
                     throw new IllegalStateException("Content URI not set");
                 }
+                if (mSortOrder != null && mSortColumns != null) {
+                    throw new IllegalStateException("Both sort order and sort columns set");
+                }
+                if ((mLimit != 0 || mOffset != 0) && mSortOrder == null && mSortColumns == null) {
+                    throw new IllegalStateException("Limit and offset require a sort order");
+                }
                 final Query query = new Query();
                 query.contentUri = mContentUri;
                 query.projection = mProjection;
                 query.selection = mSelection;
                 query.selectionArgs = mSelectionArgs;
                 query.sortOrder = mSortOrder;
+                query.sortColumns = mSortColumns;
+                query.sortDescending = mSortDescending;
+                query.limit = mLimit;
+                query.offset = mOffset;
+                query.notifyForDescendants = mNotifyForDescendants;
                 return query;
             }
         }
     }
+
+    /**
+     * Loader behavior options for
+     * {@link #flowable(ContentResolver, Query, Scheduler, BackpressureStrategy, Options)}.
+     */
+    public static final class Options {
+
+        static final Options DEFAULT = new Options.Builder().create();
+
+        long debounceWindowMillis;
+        long debounceMaxWaitMillis;
+        boolean shared;
+        long shareGracePeriodMillis;
+        QueryCache cache;
+        NotificationFilter notificationFilter;
+        LoaderStats stats;
+        boolean warm;
+        boolean directNotifications;
+        int maxBufferedCursors;
+        boolean singleFlight;
+        boolean reuseProviderClient;
+
+        Options() {
+
+        }
+
+        /**
+         * @return a copy of these {@link Options} with sharing disabled
+         */
+        @NonNull
+        Options unshared() {
+            final Options options = copy();
+            options.shared = false;
+            options.shareGracePeriodMillis = 0;
+            // The shared loader consumes everything, subscribers apply their own buffer
+            options.maxBufferedCursors = 0;
+            return options;
+        }
+
+        @NonNull
+        private Options copy() {
+            final Options options = new Options();
+            options.debounceWindowMillis = debounceWindowMillis;
+            options.debounceMaxWaitMillis = debounceMaxWaitMillis;
+            options.shared = shared;
+            options.shareGracePeriodMillis = shareGracePeriodMillis;
+            options.cache = cache;
+            options.notificationFilter = notificationFilter;
+            options.stats = stats;
+            options.warm = warm;
+            options.directNotifications = directNotifications;
+            options.maxBufferedCursors = maxBufferedCursors;
+            options.singleFlight = singleFlight;
+            options.reuseProviderClient = reuseProviderClient;
+            return options;
+        }
+
+        @Override
+        public String toString() {
+            return "Options{" +
+                    "debounceWindowMillis=" + debounceWindowMillis +
+                    ", debounceMaxWaitMillis=" + debounceMaxWaitMillis +
+                    ", shared=" + shared +
+                    ", shareGracePeriodMillis=" + shareGracePeriodMillis +
+                    ", cache=" + cache +
+                    ", notificationFilter=" + notificationFilter +
+                    ", stats=" + stats +
+                    ", warm=" + warm +
+                    ", directNotifications=" + directNotifications +
+                    ", maxBufferedCursors=" + maxBufferedCursors +
+                    ", singleFlight=" + singleFlight +
+                    ", reuseProviderClient=" + reuseProviderClient +
+                    '}';
+        }
+
+        /**
+         * {@link Options} builder.
+         * <p>
+         * All options are disabled by default.
+         */
+        public static final class Builder {
+
+            private long mDebounceWindowMillis;
+            private long mDebounceMaxWaitMillis;
+            private boolean mShared;
+            private long mShareGracePeriodMillis;
+            private QueryCache mCache;
+            private NotificationFilter mNotificationFilter;
+            private LoaderStats mStats;
+            private boolean mWarm;
+            private boolean mDirectNotifications;
+            private int mMaxBufferedCursors;
+            private boolean mSingleFlight;
+            private boolean mReuseProviderClient;
+
+            public Builder() {
+
+            }
+
+            /**
+             * Merges a burst of content change notifications into a single reload. The reload
+             * happens once no notification arrived for the given window.
+             *
+             * @param window the quiet period after the last notification, 0 to disable
+             * @param unit   the window {@link TimeUnit}
+             * @throws IllegalArgumentException if window is negative
+             */
+            @NonNull
+            public Builder setDebounce(final long window, @NonNull final TimeUnit unit) {
+                if (window < 0) {
+                    throw new IllegalArgumentException("Debounce window must not be negative");
+                }
+                mDebounceWindowMillis = unit.toMillis(window);
+                return this;
+            }
+
+            /**
+             * Limits how long a reload may be postponed by {@link #setDebounce(long, TimeUnit)}
+             * while notifications keep arriving. Has no effect if debounce is disabled.
+             *
+             * @param maxWait the maximum delay since the first notification of a burst, 0 for
+             *                no limit
+             * @param unit    the maxWait {@link TimeUnit}
+             * @throws IllegalArgumentException if maxWait is negative
+             */
+            @NonNull
+            public Builder setDebounceMaxWait(final long maxWait, @NonNull final TimeUnit unit) {
+                if (maxWait < 0) {
+                    throw new IllegalArgumentException("Debounce max wait must not be negative");
+                }
+                mDebounceMaxWaitMillis = unit.toMillis(maxWait);
+                return this;
+            }
+
+            /**
+             * Shares the loader between all subscribers of equal {@link Query}s in the process.
+             * A shared loader registers one {@link android.database.ContentObserver} and runs one
+             * query per change for all of its subscribers.
+             * <p>
+             * Every subscriber receives its own {@link Cursor} handle over the same underlying
+             * {@link Cursor} and must close it as usual. The underlying {@link Cursor} is closed
+             * once a newer one is loaded and all handles are closed. A subscriber that joins a
+             * live loader immediately receives the latest {@link Cursor}.
+             * <p>
+             * {@link BackpressureStrategy#LATEST} and {@link BackpressureStrategy#DROP} close the
+             * handles they drop. Any other strategy buffers handles until they are requested.
+             * <p>
+             * The loader is created with the {@link ContentResolver}, {@link Scheduler} and
+             * {@link Options} of its first subscriber.
+             *
+             * @param shared whether to share the loader
+             */
+            @NonNull
+            public Builder setShared(final boolean shared) {
+                mShared = shared;
+                return this;
+            }
+
+            /**
+             * Keeps a shared loader alive for the given period after its last subscriber left,
+             * so that a quick resubscribe, like on configuration change, reuses the loader and
+             * its latest {@link Cursor}. Has no effect unless {@link #setShared(boolean)} is set.
+             *
+             * @param gracePeriod the period to keep the loader alive, 0 to tear down immediately
+             * @param unit        the gracePeriod {@link TimeUnit}
+             * @throws IllegalArgumentException if gracePeriod is negative
+             */
+            @NonNull
+            public Builder setShareGracePeriod(
+                    final long gracePeriod,
+                    @NonNull final TimeUnit unit) {
+                if (gracePeriod < 0) {
+                    throw new IllegalArgumentException("Grace period must not be negative");
+                }
+                mShareGracePeriodMillis = unit.toMillis(gracePeriod);
+                return this;
+            }
+
+            /**
+             * Serves {@link RowMapper} snapshots from the {@link QueryCache} and stores the
+             * loaded ones in it. A fresh cached snapshot is emitted at subscribe time and the
+             * first query is skipped, so the loader only queries on change. Has effect only for
+             * {@link #flowable(ContentResolver, Query, Scheduler, BackpressureStrategy, Options,
+             * RowMapper)} when not {@link #setShared(boolean) shared}.
+             *
+             * @param cache the {@link QueryCache}, null to disable caching
+             */
+            @NonNull
+            public Builder setCache(@Nullable final QueryCache cache) {
+                mCache = cache;
+                return this;
+            }
+
+            /**
+             * Drops content change notifications whose {@link Uri} cannot affect the
+             * {@link Query}, before any reload is scheduled.
+             *
+             * @param notificationFilter the {@link NotificationFilter}, null to accept all
+             *                           notifications
+             */
+            @NonNull
+            public Builder setNotificationFilter(
+                    @Nullable final NotificationFilter notificationFilter) {
+                mNotificationFilter = notificationFilter;
+                return this;
+            }
+
+            /**
+             * Collects {@link LoaderStats} for the loaders created with these {@link Options}:
+             * <ul>
+             * <li>Content change notifications that requested a reload, and the ones dropped
+             * by the {@link #setNotificationFilter(NotificationFilter)} filter.</li>
+             * <li>The count and the last and total duration of {@link #setWarm(boolean)}
+             * warms.</li>
+             * <li>The {@link Cursor}s closed without being delivered because the subscriber
+             * fell behind, with {@link #setMaxBufferedCursors(int)} or a {@link #setShared(boolean)
+             * shared} loader with {@link BackpressureStrategy#LATEST}.</li>
+             * </ul>
+             *
+             * @param stats the {@link LoaderStats} to count into, null to disable counting
+             */
+            @NonNull
+            public Builder setStats(@Nullable final LoaderStats stats) {
+                mStats = stats;
+                return this;
+            }
+
+            /**
+             * Makes the loaded {@link Cursor} count its rows on the loader {@link Scheduler}
+             * before it is emitted. For SQLite backed {@link Cursor}s this fills the first
+             * {@link android.database.CursorWindow}, which would otherwise happen on the first
+             * {@link Cursor#getCount()} or move on the subscriber thread. The time it took is
+             * recorded in {@link LoaderStats} if {@link #setStats(LoaderStats)} is set.
+             * <p>
+             * Has effect for loaders that emit {@link Cursor}s, including
+             * {@link #single(ContentResolver, Query, Options)}.
+             *
+             * @param warm whether to warm the loaded {@link Cursor}s
+             */
+            @NonNull
+            public Builder setWarm(final boolean warm) {
+                mWarm = warm;
+                return this;
+            }
+
+            /**
+             * Receives content change notifications without an observer thread. The
+             * {@link android.database.ContentObserver} is registered with a null
+             * {@link android.os.Handler}, so notifications arrive on a binder thread and the
+             * reload is scheduled on the loader {@link Scheduler} from there. This saves a
+             * thread hop per notification and does not hold an observer thread for the loader.
+             * <p>
+             * The {@link NotificationFilter} set with
+             * {@link #setNotificationFilter(NotificationFilter)} then runs on the binder thread
+             * and must not block.
+             *
+             * @param directNotifications whether to receive notifications without an observer
+             *                            thread
+             * @see RxCursorLoader#setObserverThreadCount(int)
+             */
+            @NonNull
+            public Builder setDirectNotifications(final boolean directNotifications) {
+                mDirectNotifications = directNotifications;
+                return this;
+            }
+
+            /**
+             * Replaces the {@link BackpressureStrategy} with one that never leaks
+             * {@link Cursor}s. At most the given number of loaded {@link Cursor}s wait for the
+             * subscriber to request them. When a newer one arrives at a full buffer, the oldest
+             * is closed on the loader {@link Scheduler} and counted in {@link LoaderStats} if
+             * {@link #setStats(LoaderStats)} is set. {@link Cursor}s still buffered on dispose are
+             * closed too.
+             * <p>
+             * 1 behaves like {@link BackpressureStrategy#LATEST}, except that replaced
+             * {@link Cursor}s are closed. Has effect for loaders that emit {@link Cursor}s.
+             * <p>
+             * Requests are passed to the loader, so it still queries only when the subscriber
+             * has requested more. The buffer fills up only with a {@link #setShared(boolean)
+             * shared} loader, which loads for all of its subscribers.
+             * <p>
+             * Operators that buffer on their own, like {@code observeOn}, request up to 128
+             * {@link Cursor}s ahead. Pass them a small buffer size, like
+             * {@code observeOn(scheduler, false, 1)}, to keep the number of open {@link Cursor}s
+             * bounded.
+             *
+             * @param maxBufferedCursors the maximum number of buffered {@link Cursor}s, 0 to
+             *                           use the {@link BackpressureStrategy}
+             * @throws IllegalArgumentException if maxBufferedCursors is negative
+             */
+            @NonNull
+            public Builder setMaxBufferedCursors(final int maxBufferedCursors) {
+                if (maxBufferedCursors < 0) {
+                    throw new IllegalArgumentException(
+                            "Max buffered cursors must not be negative");
+                }
+                mMaxBufferedCursors = maxBufferedCursors;
+                return this;
+            }
+
+            /**
+             * Lets concurrent {@link Single}s for equal {@link Query}s share one query. A
+             * subscription that starts while an equal one is still querying does not query on
+             * its own, but receives the same result once it is loaded. Subscriptions that start
+             * after the result was delivered query again.
+             * <p>
+             * {@link Cursor} subscribers receive their own {@link Cursor} handles over the same
+             * underlying {@link Cursor} and must close them as usual. The underlying
+             * {@link Cursor} is closed once all handles are closed. Every handle has its own
+             * position, so subscribers can read concurrently. {@link RowMapper} subscribers
+             * receive the same immutable {@link List}, and share the query only if they use an
+             * equal {@link RowMapper}.
+             * <p>
+             * The query runs on the thread of the first subscriber with its
+             * {@link ContentResolver} and {@link Options}, and is cancelled only when all
+             * subscribers are disposed. Has effect for
+             * {@link #single(ContentResolver, Query, Options)} and
+             * {@link #single(ContentResolver, Query, Options, RowMapper)}.
+             *
+             * @param singleFlight whether concurrent equal queries share one query
+             */
+            @NonNull
+            public Builder setSingleFlight(final boolean singleFlight) {
+                mSingleFlight = singleFlight;
+                return this;
+            }
+
+            /**
+             * Queries through unstable {@link android.content.ContentProviderClient}s that are
+             * acquired per {@link ContentResolver} and authority and reused, instead of letting
+             * every {@link ContentResolver} query look up and acquire the provider again. The
+             * clients are kept while any live loader or running {@link Single} created with this
+             * option uses the authority. A client is used by one query at a time, so queries
+             * that run one after another share one client and concurrent queries acquire one
+             * each. If the provider process dies, the client is released and the query is
+             * retried once with a new one.
+             * <p>
+             * Has effect on API 16 and above, for {@link #flowable(ContentResolver, Query,
+             * Scheduler, BackpressureStrategy, Options)} and the {@code single} overloads
+             * accepting {@link Options}.
+             *
+             * @param reuseProviderClient whether to reuse the provider client
+             */
+            @NonNull
+            public Builder setReuseProviderClient(final boolean reuseProviderClient) {
+                mReuseProviderClient = reuseProviderClient;
+                return this;
+            }
+
+            /**
+             * Creates the {@link Options}
+             *
+             * @return the {@link Options}
+             */
+            @NonNull
+            public Options create() {
+                final Options options = new Options();
+                options.debounceWindowMillis = mDebounceWindowMillis;
+                options.debounceMaxWaitMillis = mDebounceMaxWaitMillis;
+                options.shared = mShared;
+                options.shareGracePeriodMillis = mShareGracePeriodMillis;
+                options.cache = mCache;
+                options.notificationFilter = mNotificationFilter;
+                options.stats = mStats;
+                options.warm = mWarm;
+                options.directNotifications = mDirectNotifications;
+                options.maxBufferedCursors = mMaxBufferedCursors;
+                options.singleFlight = mSingleFlight;
+                options.reuseProviderClient = mReuseProviderClient;
+                return options;
+            }
+        }
+    }
+
+    /**
+     * Paging parameters for
+     * {@link #paged(ContentResolver, Query, Scheduler, Paging, RowMapper)}.
+     */
+    public static final class Paging {
+
+        int pageSize;
+        String idColumn;
+        String sortColumn;
+        boolean descending;
+        boolean offset;
+
+        Paging() {
+
+        }
+
+        @Override
+        public String toString() {
+            return "Paging{" +
+                    "pageSize=" + pageSize +
+                    ", idColumn='" + idColumn + '\'' +
+                    ", sortColumn='" + sortColumn + '\'' +
+                    ", descending=" + descending +
+                    ", offset=" + offset +
+                    '}';
+        }
+
+        /**
+         * {@link Paging} builder.
+         * <p>
+         * The only required parameter is the page size. Rows are ordered by
+         * {@link android.provider.BaseColumns#_ID} unless a sort column is set.
+         */
+        public static final class Builder {
+
+            private int mPageSize;
+            private String mIdColumn = BaseColumns._ID;
+            private String mSortColumn;
+            private boolean mDescending;
+            private boolean mOffset;
+
+            public Builder() {
+
+            }
+
+            /**
+             * @param pageSize the number of rows per page
+             * @throws IllegalArgumentException if pageSize is not positive
+             */
+            @NonNull
+            public Builder setPageSize(final int pageSize) {
+                if (pageSize < 1) {
+                    throw new IllegalArgumentException("Page size must be positive");
+                }
+                mPageSize = pageSize;
+                return this;
+            }
+
+            /**
+             * Sets the column with unique row ids that breaks ties between rows with equal sort
+             * column values. Defaults to {@link android.provider.BaseColumns#_ID}.
+             *
+             * @param idColumn the id column, must be a part of the projection
+             */
+            @NonNull
+            public Builder setIdColumn(@NonNull final String idColumn) {
+                mIdColumn = idColumn;
+                return this;
+            }
+
+            /**
+             * Sets the column to order rows by, followed by the id column.
+             *
+             * @param sortColumn the sort column, must be a part of the projection and must not
+             *                   contain null values. Null to order by id column only.
+             * @param descending true to sort in descending order
+             */
+            @NonNull
+            public Builder setSortColumn(final String sortColumn, final boolean descending) {
+                mSortColumn = sortColumn;
+                mDescending = descending;
+                return this;
+            }
+
+            /**
+             * Selects pages with LIMIT and OFFSET instead of a keyset. Slower for deep pages,
+             * but works with providers that cannot compare by sort and id columns.
+             *
+             * @param offset true to use offset paging
+             */
+            @NonNull
+            public Builder setOffsetPaging(final boolean offset) {
+                mOffset = offset;
+                return this;
+            }
+
+            /**
+             * Creates the {@link Paging}
+             *
+             * @return the {@link Paging}
+             * @throws IllegalStateException if page size or id column is not set
+             */
+            @NonNull
+            public Paging create() {
+                if (mPageSize == 0) {
+                    throw new IllegalStateException("Page size not set");
+                }
+                //noinspection ConstantConditions
+                if (mIdColumn == null) {
+                    throw new IllegalStateException("Id column not set");
+                }
+                final Paging paging = new Paging();
+                paging.pageSize = mPageSize;
+                paging.idColumn = mIdColumn;
+                paging.sortColumn = mSortColumn;
+                paging.descending = mDescending;
+                paging.offset = mOffset;
+                return paging;
+            }
+        }
+    }
 }
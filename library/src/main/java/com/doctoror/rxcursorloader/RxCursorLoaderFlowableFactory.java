@@ -18,18 +18,34 @@ package com.doctoror.rxcursorloader;
 import android.content.ContentResolver;
 import android.database.ContentObserver;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
 import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
 import io.reactivex.FlowableEmitter;
 import io.reactivex.FlowableOnSubscribe;
+import io.reactivex.FlowableOperator;
+import io.reactivex.FlowableSubscriber;
 import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
 import io.reactivex.functions.Action;
+import io.reactivex.functions.Cancellable;
+import io.reactivex.functions.Function;
 
 import static com.doctoror.rxcursorloader.RxCursorLoader.isDebugLoggingEnabled;
 import static com.doctoror.rxcursorloader.RxCursorLoader.TAG;
@@ -41,7 +57,150 @@ final class RxCursorLoaderFlowableFactory {
             @NonNull final ContentResolver resolver,
             @NonNull final RxCursorLoader.Query query,
             @NonNull final Scheduler scheduler,
-            @NonNull final BackpressureStrategy backpressureStrategy) {
+            @NonNull final BackpressureStrategy backpressureStrategy,
+            @NonNull final RxCursorLoader.Options options) {
+        checkParams(resolver, query, options);
+
+        // The Cursor buffer drops and closes, the emitter must not drop Cursors on its own
+        final BackpressureStrategy strategy = options.maxBufferedCursors != 0
+                ? BackpressureStrategy.BUFFER : backpressureStrategy;
+
+        Flowable<Cursor> loader;
+        if (options.shared) {
+            loader = RxCursorLoaderSharedFactory
+                    .create(resolver, query, scheduler, strategy, options);
+        } else {
+            loader = createLoader(resolver, query, scheduler, strategy, options,
+                    WarmingConverter.forOptions(options), null);
+        }
+
+        if (options.maxBufferedCursors != 0) {
+            loader = loader.lift(new CursorBackpressureOperator(
+                    options.maxBufferedCursors, scheduler, options.stats));
+        }
+
+        return loader;
+    }
+
+    /**
+     * Creates a loader that emits immutable snapshots of {@link Cursor} rows mapped with
+     * {@link RowMapper}. The {@link Cursor}s are mapped and closed on the loader thread.
+     */
+    @NonNull
+    static <T> Flowable<List<T>> createMapped(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final Scheduler scheduler,
+            @NonNull final BackpressureStrategy backpressureStrategy,
+            @NonNull final RxCursorLoader.Options options,
+            @NonNull final RowMapper<T> mapper) {
+        checkParams(resolver, query, options);
+
+        final SnapshotConverter<T> converter = new SnapshotConverter<>(mapper);
+        if (options.shared) {
+            // Queries are shared, mapping is done per subscriber. The latest snapshot is
+            // replayed by the shared loader, so the cache is not used
+            return applyBackpressure(
+                    RxCursorLoaderSharedFactory
+                            .create(resolver, query, scheduler, BackpressureStrategy.BUFFER,
+                                    options)
+                            .map(new Function<Cursor, List<T>>() {
+
+                                @Override
+                                public List<T> apply(final Cursor cursor) {
+                                    return converter.convert(cursor);
+                                }
+                            }),
+                    backpressureStrategy);
+        }
+
+        if (options.cache != null) {
+            return Flowable.defer(new Callable<Publisher<List<T>>>() {
+
+                @Override
+                public Publisher<List<T>> call() {
+                    final CachingConverter<T> converter = new CachingConverter<>(
+                            options.cache, resolver, query, mapper);
+                    final Flowable<List<T>> loader = createLoader(resolver, query, scheduler,
+                            backpressureStrategy, options, converter, converter);
+
+                    // Served synchronously, the loader skips the first query if still fresh
+                    final List<T> cached = converter.cached();
+                    return (cached != null ? loader.startWith(cached) : loader)
+                            .doFinally(new Action() {
+
+                                @Override
+                                public void run() {
+                                    converter.release();
+                                }
+                            });
+                }
+            });
+        }
+
+        return createLoader(resolver, query, scheduler, backpressureStrategy, options, converter,
+                null);
+    }
+
+    /**
+     * Creates a loader that emits immutable snapshots along with the {@link ChangeSet} against
+     * the previous snapshot, computed on the loader thread. Every subscription diffs against
+     * its own previous snapshot, and no snapshot is ever dropped, so that every
+     * {@link ChangeSet} is relative to the previously emitted one.
+     */
+    @NonNull
+    static <T> Flowable<SnapshotDiff<T>> createDiff(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final Scheduler scheduler,
+            @NonNull final RxCursorLoader.Options options,
+            @NonNull final String idColumn,
+            @NonNull final RowMapper<T> mapper) {
+        checkParams(resolver, query, options);
+        //noinspection ConstantConditions
+        if (idColumn == null) {
+            throw new NullPointerException("Id column param must not be null");
+        }
+        //noinspection ConstantConditions
+        if (mapper == null) {
+            throw new NullPointerException("RowMapper param must not be null");
+        }
+
+        if (options.shared) {
+            // Queries are shared, mapping and diffing is done per subscriber
+            return Flowable.defer(new Callable<Publisher<SnapshotDiff<T>>>() {
+
+                @Override
+                public Publisher<SnapshotDiff<T>> call() {
+                    final DiffConverter<T> converter = new DiffConverter<>(idColumn, mapper);
+                    return RxCursorLoaderSharedFactory
+                            .create(resolver, query, scheduler, BackpressureStrategy.BUFFER,
+                                    options)
+                            .map(new Function<Cursor, SnapshotDiff<T>>() {
+
+                                @Override
+                                public SnapshotDiff<T> apply(final Cursor cursor) {
+                                    return converter.convert(cursor);
+                                }
+                            });
+                }
+            });
+        }
+
+        return Flowable.defer(new Callable<Publisher<SnapshotDiff<T>>>() {
+
+            @Override
+            public Publisher<SnapshotDiff<T>> call() {
+                return createLoader(resolver, query, scheduler, BackpressureStrategy.BUFFER,
+                        options, new DiffConverter<>(idColumn, mapper), null);
+            }
+        });
+    }
+
+    private static void checkParams(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final RxCursorLoader.Options options) {
         //noinspection ConstantConditions
         if (resolver == null) {
             throw new NullPointerException("ContentResolver param must not be null");
@@ -50,26 +209,165 @@ final class RxCursorLoaderFlowableFactory {
         if (query == null) {
             throw new NullPointerException("Params param must not be null");
         }
+        //noinspection ConstantConditions
+        if (options == null) {
+            throw new NullPointerException("Options param must not be null");
+        }
+    }
 
-        final CursorLoaderOnSubscribe onSubscribe = new CursorLoaderOnSubscribe(
-                resolver, query, scheduler);
-
+    /**
+     * Creates a loader with its own {@link CursorLoaderOnSubscribe} per subscription, so that
+     * the returned {@link Flowable} can be subscribed to any number of times. The converter
+     * must be safe to share between the subscriptions.
+     */
+    @NonNull
+    private static <T> Flowable<T> createLoader(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final Scheduler scheduler,
+            @NonNull final BackpressureStrategy backpressureStrategy,
+            @NonNull final RxCursorLoader.Options options,
+            @NonNull final CursorConverter<T> converter,
+            @Nullable final CachingConverter<?> cachingConverter) {
         return Flowable
-                .create(onSubscribe, backpressureStrategy)
-                .subscribeOn(scheduler)
-                .doOnTerminate(new Action() {
+                .defer(new Callable<Publisher<T>>() {
+
                     @Override
-                    public void run() {
-                        onSubscribe.release();
+                    public Publisher<T> call() {
+                        final CursorLoaderOnSubscribe<T> onSubscribe
+                                = new CursorLoaderOnSubscribe<>(resolver, query, scheduler,
+                                options, converter, cachingConverter);
+                        return Flowable
+                                .create(onSubscribe, backpressureStrategy)
+                                .lift(new DemandOperator<>(onSubscribe));
                     }
-                });
+                })
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * Applies the {@link BackpressureStrategy} to a {@link Flowable} that ignores backpressure.
+     */
+    @NonNull
+    private static <T> Flowable<T> applyBackpressure(
+            @NonNull final Flowable<T> source,
+            @NonNull final BackpressureStrategy backpressureStrategy) {
+        switch (backpressureStrategy) {
+            case BUFFER:
+                return source.onBackpressureBuffer();
+
+            case DROP:
+                return source.onBackpressureDrop();
+
+            case LATEST:
+                return source.onBackpressureLatest();
+
+            default:
+                return source;
+        }
+    }
+
+    /**
+     * Reports every request to the {@link CursorLoaderOnSubscribe} after it was passed to the
+     * emitter, so that the emitter can take what the resulting reload emits.
+     * {@link Flowable#doOnRequest(io.reactivex.functions.LongConsumer)} is called before.
+     */
+    private static final class DemandOperator<T> implements FlowableOperator<T, T> {
+
+        @NonNull
+        private final CursorLoaderOnSubscribe<T> mOnSubscribe;
+
+        DemandOperator(@NonNull final CursorLoaderOnSubscribe<T> onSubscribe) {
+            mOnSubscribe = onSubscribe;
+        }
+
+        @Override
+        public Subscriber<? super T> apply(final Subscriber<? super T> downstream) {
+            return new FlowableSubscriber<T>() {
+
+                @Override
+                public void onSubscribe(final Subscription s) {
+                    downstream.onSubscribe(new Subscription() {
+
+                        @Override
+                        public void request(final long n) {
+                            s.request(n);
+                            mOnSubscribe.onRequest(n);
+                        }
+
+                        @Override
+                        public void cancel() {
+                            s.cancel();
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(final T t) {
+                    downstream.onNext(t);
+                }
+
+                @Override
+                public void onError(final Throwable t) {
+                    downstream.onError(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    downstream.onComplete();
+                }
+            };
+        }
     }
 
-    private static final class CursorLoaderOnSubscribe
-            implements FlowableOnSubscribe<Cursor> {
+    /**
+     * The loader of a single subscription
+     */
+    private static final class CursorLoaderOnSubscribe<T>
+            implements FlowableOnSubscribe<T> {
+
+        /**
+         * No reload is scheduled or running
+         */
+        private static final int STATE_IDLE = 0;
 
+        /**
+         * A reload is scheduled and not yet running
+         */
+        private static final int STATE_SCHEDULED = 1;
+
+        /**
+         * A reload is querying or emitting
+         */
+        private static final int STATE_QUERYING = 2;
+
+        /**
+         * A reload is querying or emitting and exactly one more must run after it
+         */
+        private static final int STATE_DIRTY = 3;
+
+        /**
+         * The subscription is released and no reload may run or emit
+         */
+        private static final int STATE_RELEASED = 4;
+
+        /**
+         * A reload is requested and waits for the subscriber to request more
+         */
+        private static final int STATE_WAITING = 5;
+
+        /**
+         * Guards the emitter and observer registration. Never held while querying.
+         */
         private final Object mLock = new Object();
 
+        private final AtomicInteger mState = new AtomicInteger(STATE_IDLE);
+
+        /**
+         * The number of items requested and not yet emitted, Long.MAX_VALUE if unbounded
+         */
+        private final AtomicLong mDemand = new AtomicLong();
+
         @NonNull
         private final ContentResolver mContentResolver;
 
@@ -79,35 +377,123 @@ final class RxCursorLoaderFlowableFactory {
         @NonNull
         private final Scheduler mScheduler;
 
+        @NonNull
+        private final RxCursorLoader.Options mOptions;
+
+        @NonNull
+        private final CursorConverter<T> mConverter;
+
+        /**
+         * The {@link #mConverter} if it caches snapshots
+         */
+        @Nullable
+        private final CachingConverter<?> mCachingConverter;
+
+        private ObserverDispatcher.Lease mObserverLease;
+
+        /**
+         * The provider client to query with if {@link RxCursorLoader.Options#reuseProviderClient}
+         * is set
+         */
+        private ProviderClients.Lease mClientLease;
+
         private Handler mHandler;
 
-        private FlowableEmitter<Cursor> mEmitter;
+        private FlowableEmitter<T> mEmitter;
 
         private ContentObserver mResolverObserver;
 
+        /**
+         * The query of the running reload until its result is emitted. Whoever takes it out
+         * owns it: release and newer reloads cancel it, the reload itself emits its result.
+         */
+        private final AtomicReference<CancellableQuery> mQueryInFlight = new AtomicReference<>();
+
+        /**
+         * Whether the last reload was cancelled because a newer one replaced it. The next
+         * reload is not cancelled for the same reason, so that a steady stream of notifications
+         * cannot starve the subscriber.
+         */
+        private volatile boolean mLastReloadSuperseded;
+
+        /**
+         * The number of accepted notifications not yet served by a reload. Counted only while a
+         * {@link MetricsListener} is installed.
+         */
+        private int mPendingNotificationCount;
+
+        /**
+         * The time of the first of {@link #mPendingNotificationCount} notifications
+         */
+        private long mFirstPendingNotificationNanos;
+
+        /**
+         * The pending debounced reload, if any
+         */
+        private DebouncedReload mDebouncedReload;
+
+        /**
+         * The time of the first notification in the current debounce burst
+         */
+        private long mDebounceBurstStart;
+
         CursorLoaderOnSubscribe(
                 @NonNull final ContentResolver resolver,
                 @NonNull final RxCursorLoader.Query query,
-                @NonNull final Scheduler scheduler) {
+                @NonNull final Scheduler scheduler,
+                @NonNull final RxCursorLoader.Options options,
+                @NonNull final CursorConverter<T> converter,
+                @Nullable final CachingConverter<?> cachingConverter) {
             mContentResolver = resolver;
             mQuery = query;
             this.mScheduler = scheduler;
+            mOptions = options;
+            mConverter = converter;
+            mCachingConverter = cachingConverter;
         }
 
         @Override
-        public void subscribe(final FlowableEmitter<Cursor> emitter) {
-            final HandlerThread handlerThread = new HandlerThread(TAG.concat(".HandlerThread"));
-            handlerThread.start();
+        public void subscribe(final FlowableEmitter<T> emitter) {
+            // Without a Handler, notifications are received on a binder thread
+            final ObserverDispatcher.Lease observerLease = mOptions.directNotifications
+                    ? null : ObserverDispatcher.getInstance().acquire();
+            final ProviderClients.Lease clientLease = mOptions.reuseProviderClient
+                    ? ProviderClients.acquire(mContentResolver, mQuery.contentUri) : null;
             synchronized (mLock) {
-                mHandler = new Handler(handlerThread.getLooper());
+                mObserverLease = observerLease;
+                mClientLease = clientLease;
+                mHandler = observerLease != null ? observerLease.getHandler() : null;
                 mEmitter = emitter;
-                mContentResolver.registerContentObserver(mQuery.contentUri, true,
-                        getResolverObserver());
+                mContentResolver.registerContentObserver(mQuery.contentUri,
+                        mQuery.notifyForDescendants, getResolverObserver());
+            }
+            // Called on dispose as well as on terminate, or right away if already disposed
+            emitter.setCancellable(new Cancellable() {
+
+                @Override
+                public void cancel() {
+                    release();
+                }
+            });
+            if (mCachingConverter != null && mCachingConverter.isCachedFresh()) {
+                // The cached snapshot was emitted and nothing changed since, wait for a change
+                return;
+            }
+            if (markReloadRequested()) {
+                runReloads();
             }
-            reload();
         }
 
+        /**
+         * Releases the subscription without waiting for a running query. A result loaded
+         * after this is discarded instead of emitted.
+         */
         private void release() {
+            mState.set(STATE_RELEASED);
+            final CancellableQuery queryInFlight = mQueryInFlight.getAndSet(null);
+            if (queryInFlight != null) {
+                queryInFlight.cancel();
+            }
             synchronized (mLock) {
                 if (mResolverObserver != null) {
                     mContentResolver.unregisterContentObserver(mResolverObserver);
@@ -116,41 +502,293 @@ final class RxCursorLoaderFlowableFactory {
 
                 mEmitter = null;
 
-                if (mHandler != null) {
-                    final Looper looper = mHandler.getLooper();
-                    if (looper != null) {
-                        looper.quit();
-                    }
+                if (mDebouncedReload != null) {
+                    mDebouncedReload.dispose();
+                    mDebouncedReload = null;
+                }
+
+                if (mObserverLease != null) {
+                    mObserverLease.release();
+                    mObserverLease = null;
                 }
                 mHandler = null;
+
+                // After cancelling the query in flight, which may still be using the client
+                if (mClientLease != null) {
+                    mClientLease.release();
+                    mClientLease = null;
+                }
+            }
+        }
+
+        /**
+         * Marks that a reload is requested.
+         * <p>
+         * If the subscriber has not requested more, the reload waits for
+         * {@link #onRequest(long)}, so that nothing is queried for a subscriber that can not
+         * take it. If a reload is already scheduled or waiting, it will load the latest content,
+         * so nothing is done.
+         * If a reload is running, the loader is marked dirty so that exactly one more reload
+         * runs after it, no matter how many notifications arrive in the meantime. The query of
+         * the running reload is cancelled, unless the previous reload was cancelled this way.
+         *
+         * @return true if the caller must run {@link #runReloads()}
+         */
+        private boolean markReloadRequested() {
+            while (true) {
+                switch (mState.get()) {
+                    case STATE_IDLE:
+                        if (mDemand.get() != 0) {
+                            if (mState.compareAndSet(STATE_IDLE, STATE_SCHEDULED)) {
+                                return true;
+                            }
+                        } else if (mState.compareAndSet(STATE_IDLE, STATE_WAITING)) {
+                            // A request may have arrived before the state changed
+                            return stopWaiting();
+                        }
+                        break;
+
+                    case STATE_QUERYING:
+                        if (mState.compareAndSet(STATE_QUERYING, STATE_DIRTY)) {
+                            cancelSupersededQuery();
+                            return false;
+                        }
+                        break;
+
+                    default:
+                        // Scheduled or dirty already, or released
+                        return false;
+                }
+            }
+        }
+
+        private void cancelSupersededQuery() {
+            if (mLastReloadSuperseded) {
+                return;
+            }
+            final CancellableQuery superseded = mQueryInFlight.getAndSet(null);
+            if (superseded != null) {
+                mLastReloadSuperseded = true;
+                superseded.cancel();
+            }
+        }
+
+        /**
+         * Adds the demand and schedules the reload that waited for it, if any.
+         *
+         * @param n the number of requested items
+         */
+        private void onRequest(final long n) {
+            while (true) {
+                final long demand = mDemand.get();
+                final long sum = demand + n;
+                // Long.MAX_VALUE means unbounded
+                if (mDemand.compareAndSet(demand, sum < 0 ? Long.MAX_VALUE : sum)) {
+                    break;
+                }
+            }
+            if (stopWaiting()) {
+                // Not on the requesting thread, which may be the main thread
+                mScheduler.scheduleDirect(mReloadRunnable);
+            }
+        }
+
+        /**
+         * Moves from waiting to scheduled if there is demand.
+         *
+         * @return true if the caller must run {@link #runReloads()}
+         */
+        private boolean stopWaiting() {
+            return mDemand.get() != 0 && mState.compareAndSet(STATE_WAITING, STATE_SCHEDULED);
+        }
+
+        private void onEmitted() {
+            while (true) {
+                final long demand = mDemand.get();
+                if (demand == Long.MAX_VALUE || demand == 0
+                        || mDemand.compareAndSet(demand, demand - 1)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Moves from scheduled or dirty to querying.
+         *
+         * @return false if released
+         */
+        private boolean startQuerying() {
+            while (true) {
+                final int state = mState.get();
+                if (state == STATE_RELEASED) {
+                    return false;
+                }
+                if (mState.compareAndSet(state, STATE_QUERYING)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Reloads until the loader is no longer dirty, or until the subscriber stops requesting,
+         * in which case the last reload waits for {@link #onRequest(long)}. Must be called only
+         * when {@link #markReloadRequested()} returned true.
+         */
+        private void runReloads() {
+            while (startQuerying()) {
+                try {
+                    reload();
+                } catch (RuntimeException e) {
+                    if (!mState.compareAndSet(STATE_QUERYING, STATE_IDLE)) {
+                        mState.compareAndSet(STATE_DIRTY, STATE_IDLE);
+                    }
+                    throw e;
+                }
+
+                if (mState.compareAndSet(STATE_QUERYING, STATE_IDLE)) {
+                    return;
+                }
+
+                // Dirty, or released
+                if (mDemand.get() == 0
+                        && mState.compareAndSet(STATE_DIRTY, STATE_WAITING)
+                        && !stopWaiting()) {
+                    return;
+                }
             }
         }
 
         /**
          * Loads new {@link Cursor}.
          * <p>
-         * This must be called from {@link #subscribe(FlowableEmitter)} thread
+         * Called only from {@link #runReloads()} on the loader {@link Scheduler}, by the thread
+         * that moved the state to querying, so reloads never overlap.
          */
-        private synchronized void reload() {
+        private void reload() {
+            if (isDebugLoggingEnabled()) {
+                Log.d(TAG, mQuery.toString());
+            }
+
+            if (mCachingConverter != null) {
+                mCachingConverter.prepare();
+            }
+
+            final CancellableQuery query = new CancellableQuery();
+
+            // The notifications this reload serves
+            final int notificationCount;
+            final long firstNotificationNanos;
+            final ProviderClients.Lease client;
+            if (mState.get() == STATE_RELEASED) {
+                return;
+            }
+            mQueryInFlight.set(query);
             synchronized (mLock) {
-                if (isDebugLoggingEnabled()) {
-                    Log.d(TAG, mQuery.toString());
+                client = mClientLease;
+                notificationCount = mPendingNotificationCount;
+                firstNotificationNanos = mFirstPendingNotificationNanos;
+                mPendingNotificationCount = 0;
+            }
+
+            final MetricsListener metrics = RxCursorLoader.getMetricsListener();
+            boolean emitted = false;
+            try {
+                emitted = reload(query, client, metrics);
+            } finally {
+                mQueryInFlight.compareAndSet(query, null);
+                if (!query.isCanceled()) {
+                    mLastReloadSuperseded = false;
+                } else if (notificationCount != 0) {
+                    synchronized (mLock) {
+                        // Served by the reload that replaced this one
+                        mPendingNotificationCount += notificationCount;
+                        mFirstPendingNotificationNanos = firstNotificationNanos;
+                    }
                 }
+            }
+
+            if (emitted && metrics != null && notificationCount != 0) {
+                metrics.onReloadEmitted(mQuery, System.nanoTime() - firstNotificationNanos,
+                        notificationCount - 1);
+            }
+        }
 
-                final Cursor c = mContentResolver.query(
-                        mQuery.contentUri,
-                        mQuery.projection,
-                        mQuery.selection,
-                        mQuery.selectionArgs,
-                        mQuery.sortOrder);
+        /**
+         * @return true if the result was emitted
+         */
+        private boolean reload(
+                @NonNull final CancellableQuery query,
+                @Nullable final ProviderClients.Lease client,
+                @Nullable final MetricsListener metrics) {
+            final long queryStart = metrics != null ? System.nanoTime() : 0;
+
+            // Query without holding the lock so that notifications can mark the loader dirty
+            final Cursor c;
+            try {
+                c = query.query(mContentResolver, client, mQuery);
+            } catch (RuntimeException e) {
+                if (query.isCanceled()) {
+                    logCanceled();
+                    return false;
+                }
+                throw e;
+            }
+            final long queryNanos = metrics != null ? System.nanoTime() - queryStart : 0;
 
-                if (mEmitter != null && !mEmitter.isCancelled()) {
-                    if (c != null) {
-                        mEmitter.onNext(c);
-                    } else {
+            if (c == null) {
+                synchronized (mLock) {
+                    if (!query.isCanceled() && mEmitter != null && !mEmitter.isCancelled()) {
                         mEmitter.onError(new QueryReturnedNullException());
                     }
                 }
+                return false;
+            }
+
+            if (query.isCanceled()) {
+                c.close();
+                logCanceled();
+                return false;
+            }
+
+            final T item;
+            try {
+                if (metrics != null) {
+                    QueryMetrics.report(metrics, mQuery, c, queryNanos);
+                }
+                item = mConverter.convert(c);
+            } catch (Exception e) {
+                synchronized (mLock) {
+                    if (query.isCanceled()) {
+                        logCanceled();
+                    } else if (mEmitter != null && !mEmitter.isCancelled()) {
+                        mEmitter.onError(e);
+                    }
+                }
+                return false;
+            }
+
+            // Once taken out, the query can no longer be cancelled
+            if (mQueryInFlight.compareAndSet(query, null)) {
+                synchronized (mLock) {
+                    // Release sets the state before taking the lock, so a result that is not
+                    // emitted here is never seen by the subscriber
+                    if (mState.get() != STATE_RELEASED
+                            && mEmitter != null && !mEmitter.isCancelled()) {
+                        onEmitted();
+                        mEmitter.onNext(item);
+                        return true;
+                    }
+                }
+            }
+
+            // Released or replaced while querying
+            mConverter.discard(item);
+            return false;
+        }
+
+        private void logCanceled() {
+            if (isDebugLoggingEnabled()) {
+                Log.d(TAG, "Cancelled " + mQuery.toString());
             }
         }
 
@@ -168,19 +806,119 @@ final class RxCursorLoaderFlowableFactory {
 
                     @Override
                     public void onChange(final boolean selfChange) {
-                        super.onChange(selfChange);
-                        mScheduler.scheduleDirect(mReloadRunnable);
+                        // Called directly before API 16
+                        onChange(selfChange, null);
+                    }
+
+                    @Override
+                    public void onChange(final boolean selfChange, @Nullable final Uri uri) {
+                        onNotification(uri);
                     }
                 };
             }
             return mResolverObserver;
         }
 
+        /**
+         * Drops the notification if it cannot affect the {@link Cursor}, schedules a reload
+         * otherwise.
+         *
+         * @param uri the changed {@link Uri}, if known
+         */
+        private void onNotification(@Nullable final Uri uri) {
+            final NotificationFilter filter = mOptions.notificationFilter;
+            final LoaderStats stats = mOptions.stats;
+            final MetricsListener metrics = RxCursorLoader.getMetricsListener();
+            if (uri != null && filter != null && !filter.accept(uri)) {
+                if (stats != null) {
+                    stats.onNotificationDropped();
+                }
+                if (metrics != null) {
+                    metrics.onNotificationDropped(mQuery, uri);
+                }
+                return;
+            }
+            if (stats != null) {
+                stats.onNotificationAccepted();
+            }
+            if (metrics != null) {
+                synchronized (mLock) {
+                    if (mPendingNotificationCount++ == 0) {
+                        mFirstPendingNotificationNanos = System.nanoTime();
+                    }
+                }
+            }
+            onContentChanged();
+        }
+
+        /**
+         * Schedules a reload, postponing it if debounce is enabled.
+         */
+        private void onContentChanged() {
+            final long window = mOptions.debounceWindowMillis;
+            if (window == 0) {
+                if (markReloadRequested()) {
+                    mScheduler.scheduleDirect(mReloadRunnable);
+                }
+                return;
+            }
+
+            final DebouncedReload reload = new DebouncedReload();
+            final long delay;
+            synchronized (mLock) {
+                if (mEmitter == null) {
+                    return;
+                }
+
+                final long now = mScheduler.now(TimeUnit.MILLISECONDS);
+                if (mDebouncedReload == null) {
+                    mDebounceBurstStart = now;
+                } else {
+                    mDebouncedReload.dispose();
+                }
+
+                final long maxWait = mOptions.debounceMaxWaitMillis;
+                delay = maxWait == 0 ? window
+                        : Math.max(0, Math.min(window, mDebounceBurstStart + maxWait - now));
+                mDebouncedReload = reload;
+            }
+
+            // A superseded reload may still run, so it checks whether it is the current one
+            reload.mDisposable = mScheduler.scheduleDirect(reload, delay, TimeUnit.MILLISECONDS);
+        }
+
         private final Runnable mReloadRunnable = new Runnable() {
             @Override
             public void run() {
-                reload();
+                runReloads();
             }
         };
+
+        /**
+         * A reload that ends the current debounce burst.
+         */
+        private final class DebouncedReload implements Runnable {
+
+            volatile Disposable mDisposable;
+
+            @Override
+            public void run() {
+                synchronized (mLock) {
+                    if (mDebouncedReload != this) {
+                        return;
+                    }
+                    mDebouncedReload = null;
+                }
+                if (markReloadRequested()) {
+                    runReloads();
+                }
+            }
+
+            void dispose() {
+                if (mDisposable != null) {
+                    mDisposable.dispose();
+                }
+            }
+        }
     }
 }
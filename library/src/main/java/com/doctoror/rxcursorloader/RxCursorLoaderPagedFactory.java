@@ -0,0 +1,466 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.FlowableOnSubscribe;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Cancellable;
+import io.reactivex.functions.LongConsumer;
+
+import static com.doctoror.rxcursorloader.RxCursorLoader.TAG;
+import static com.doctoror.rxcursorloader.RxCursorLoader.isDebugLoggingEnabled;
+
+/**
+ * Creates loaders that load {@link RxCursorLoader.Query} results page by page as the subscriber
+ * requests more.
+ * <p>
+ * Every emission is an immutable snapshot of all rows loaded so far and consumes one unit of
+ * demand. While there is demand, the loader either refreshes the loaded pages after a content
+ * change or loads the next page. A content change that arrives with no outstanding demand only
+ * marks the loader dirty and the loaded pages are refreshed on the next request.
+ */
+final class RxCursorLoaderPagedFactory {
+
+    private RxCursorLoaderPagedFactory() {
+        throw new UnsupportedOperationException();
+    }
+
+    @NonNull
+    static <T> Flowable<List<T>> create(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final Scheduler scheduler,
+            @NonNull final RxCursorLoader.Paging paging,
+            @NonNull final RowMapper<T> mapper) {
+        //noinspection ConstantConditions
+        if (resolver == null) {
+            throw new NullPointerException("ContentResolver param must not be null");
+        }
+        //noinspection ConstantConditions
+        if (query == null) {
+            throw new NullPointerException("Params param must not be null");
+        }
+        //noinspection ConstantConditions
+        if (paging == null) {
+            throw new NullPointerException("Paging param must not be null");
+        }
+        //noinspection ConstantConditions
+        if (mapper == null) {
+            throw new NullPointerException("RowMapper param must not be null");
+        }
+        if (query.sortOrder != null || query.hasQueryArgs()) {
+            throw new IllegalArgumentException("Query sort order, limit and offset must not be"
+                    + " set, they are defined by Paging");
+        }
+
+        return Flowable.defer(new Callable<Flowable<List<T>>>() {
+
+            @Override
+            public Flowable<List<T>> call() {
+                final PagedOnSubscribe<T> onSubscribe = new PagedOnSubscribe<>(
+                        resolver, query, scheduler, paging, mapper);
+
+                // Emissions never exceed the demand counted by the loader itself, but may
+                // arrive before the request reaches the emitter, so they are buffered
+                return Flowable
+                        .create(onSubscribe, BackpressureStrategy.BUFFER)
+                        .doOnRequest(new LongConsumer() {
+
+                            @Override
+                            public void accept(final long n) {
+                                onSubscribe.onRequest(n);
+                            }
+                        });
+            }
+        });
+    }
+
+    /**
+     * Builds page queries for keyset or offset paging.
+     */
+    static final class PageQueries {
+
+        @NonNull
+        private final RxCursorLoader.Query mQuery;
+
+        @NonNull
+        private final RxCursorLoader.Paging mPaging;
+
+        PageQueries(
+                @NonNull final RxCursorLoader.Query query,
+                @NonNull final RxCursorLoader.Paging paging) {
+            mQuery = query;
+            mPaging = paging;
+        }
+
+        /**
+         * @return the sort order with the page limit and offset appended
+         */
+        @NonNull
+        String sortOrder(final int limit, final int offset) {
+            final StringBuilder order = new StringBuilder(64);
+            final String direction = mPaging.descending ? " DESC" : " ASC";
+            if (mPaging.sortColumn != null) {
+                order.append(mPaging.sortColumn).append(direction).append(", ");
+            }
+            order.append(mPaging.idColumn).append(direction);
+            if (limit > 0) {
+                order.append(" LIMIT ").append(limit);
+                if (offset > 0) {
+                    order.append(" OFFSET ").append(offset);
+                }
+            }
+            return order.toString();
+        }
+
+        /**
+         * Builds the keyset selection for rows after or up to the last loaded row.
+         *
+         * @param after true to select the rows after the last loaded row, false to select the
+         *              rows up to and including it
+         * @return the selection
+         */
+        @NonNull
+        String keysetSelection(final boolean after) {
+            final String next = after != mPaging.descending ? " > ?" : " < ?";
+            final String idBound = after
+                    ? next
+                    : (mPaging.descending ? " >= ?" : " <= ?");
+
+            final String keyset;
+            if (mPaging.sortColumn == null) {
+                keyset = mPaging.idColumn + idBound;
+            } else {
+                final String sortBound = after
+                        ? next
+                        : (mPaging.descending ? " > ?" : " < ?");
+                keyset = "(" + mPaging.sortColumn + sortBound
+                        + " OR (" + mPaging.sortColumn + " = ? AND "
+                        + mPaging.idColumn + idBound + "))";
+            }
+            return mQuery.selection == null
+                    ? keyset
+                    : "(" + mQuery.selection + ") AND " + keyset;
+        }
+
+        /**
+         * @return the query selection args followed by the keyset args
+         */
+        @NonNull
+        String[] keysetSelectionArgs(@Nullable final String lastSortKey, final long lastId) {
+            final String[] keysetArgs = mPaging.sortColumn == null
+                    ? new String[]{Long.toString(lastId)}
+                    : new String[]{lastSortKey, lastSortKey, Long.toString(lastId)};
+
+            final String[] queryArgs = mQuery.selectionArgs;
+            if (queryArgs == null || queryArgs.length == 0) {
+                return keysetArgs;
+            }
+            final String[] args = new String[queryArgs.length + keysetArgs.length];
+            System.arraycopy(queryArgs, 0, args, 0, queryArgs.length);
+            System.arraycopy(keysetArgs, 0, args, queryArgs.length, keysetArgs.length);
+            return args;
+        }
+    }
+
+    private static final class PagedOnSubscribe<T> implements FlowableOnSubscribe<List<T>> {
+
+        @NonNull
+        private final ContentResolver mContentResolver;
+
+        @NonNull
+        private final RxCursorLoader.Query mQuery;
+
+        @NonNull
+        private final Scheduler mScheduler;
+
+        @NonNull
+        private final RxCursorLoader.Paging mPaging;
+
+        @NonNull
+        private final RowMapper<T> mMapper;
+
+        @NonNull
+        private final PageQueries mPageQueries;
+
+        /**
+         * Requested and not yet emitted snapshots
+         */
+        private final AtomicLong mDemand = new AtomicLong();
+
+        /**
+         * Number of scheduled drains, only the first one runs the drain loop
+         */
+        private final AtomicInteger mDrainCount = new AtomicInteger();
+
+        private volatile boolean mDirty;
+
+        private volatile FlowableEmitter<List<T>> mEmitter;
+
+        private ObserverDispatcher.Lease mObserverLease;
+
+        private ContentObserver mResolverObserver;
+
+        private CancellableQuery mQueryInFlight;
+
+        // The following fields are accessed from the drain loop only
+
+        private final List<T> mLoaded = new ArrayList<>();
+
+        private String mLastSortKey;
+
+        private long mLastId;
+
+        private boolean mExhausted;
+
+        PagedOnSubscribe(
+                @NonNull final ContentResolver resolver,
+                @NonNull final RxCursorLoader.Query query,
+                @NonNull final Scheduler scheduler,
+                @NonNull final RxCursorLoader.Paging paging,
+                @NonNull final RowMapper<T> mapper) {
+            mContentResolver = resolver;
+            mQuery = query;
+            mScheduler = scheduler;
+            mPaging = paging;
+            mMapper = mapper;
+            mPageQueries = new PageQueries(query, paging);
+        }
+
+        @Override
+        public void subscribe(final FlowableEmitter<List<T>> emitter) {
+            final ObserverDispatcher.Lease observerLease = ObserverDispatcher.getInstance()
+                    .acquire();
+            synchronized (this) {
+                mObserverLease = observerLease;
+                mResolverObserver = new ContentObserver(observerLease.getHandler()) {
+
+                    @Override
+                    public void onChange(final boolean selfChange) {
+                        super.onChange(selfChange);
+                        mDirty = true;
+                        scheduleDrain();
+                    }
+                };
+                mContentResolver.registerContentObserver(mQuery.contentUri,
+                        mQuery.notifyForDescendants, mResolverObserver);
+            }
+
+            emitter.setCancellable(new Cancellable() {
+
+                @Override
+                public void cancel() {
+                    release();
+                }
+            });
+            mEmitter = emitter;
+            scheduleDrain();
+        }
+
+        void onRequest(final long n) {
+            long current;
+            long next;
+            do {
+                current = mDemand.get();
+                next = current + n;
+                if (next < 0) {
+                    next = Long.MAX_VALUE;
+                }
+            } while (!mDemand.compareAndSet(current, next));
+            scheduleDrain();
+        }
+
+        private synchronized void release() {
+            if (mQueryInFlight != null) {
+                mQueryInFlight.cancel();
+                mQueryInFlight = null;
+            }
+            if (mResolverObserver != null) {
+                mContentResolver.unregisterContentObserver(mResolverObserver);
+                mResolverObserver = null;
+            }
+            if (mObserverLease != null) {
+                mObserverLease.release();
+                mObserverLease = null;
+            }
+        }
+
+        private void scheduleDrain() {
+            if (mDrainCount.getAndIncrement() == 0) {
+                mScheduler.scheduleDirect(mDrainRunnable);
+            }
+        }
+
+        private final Runnable mDrainRunnable = new Runnable() {
+
+            @Override
+            public void run() {
+                do {
+                    final FlowableEmitter<List<T>> emitter = mEmitter;
+                    if (emitter != null) {
+                        try {
+                            drain(emitter);
+                        } catch (Exception e) {
+                            if (!emitter.isCancelled()) {
+                                emitter.onError(e);
+                            }
+                            return;
+                        }
+                    }
+                } while (mDrainCount.decrementAndGet() != 0);
+            }
+        };
+
+        private void drain(@NonNull final FlowableEmitter<List<T>> emitter)
+                throws QueryReturnedNullException {
+            while (mDemand.get() != 0 && !emitter.isCancelled()) {
+                if (mDirty && !mLoaded.isEmpty()) {
+                    mDirty = false;
+                    refresh();
+                } else if (mDirty || !mExhausted) {
+                    // Nothing to refresh if nothing was loaded yet, but an empty first page
+                    // may have rows after a change
+                    mDirty = false;
+                    loadNextPage();
+                } else {
+                    return;
+                }
+
+                if (mDemand.get() != Long.MAX_VALUE) {
+                    mDemand.decrementAndGet();
+                }
+                emitter.onNext(Collections.unmodifiableList(new ArrayList<>(mLoaded)));
+            }
+        }
+
+        private void loadNextPage() throws QueryReturnedNullException {
+            final int pageSize = mPaging.pageSize;
+            final Cursor c;
+            if (mPaging.offset || mLoaded.isEmpty()) {
+                c = query(mQuery.selection, mQuery.selectionArgs,
+                        mPageQueries.sortOrder(pageSize, mLoaded.size()));
+            } else {
+                c = query(mPageQueries.keysetSelection(true),
+                        mPageQueries.keysetSelectionArgs(mLastSortKey, mLastId),
+                        mPageQueries.sortOrder(pageSize, 0));
+            }
+
+            final int count = read(c, false);
+            mExhausted = count < pageSize;
+        }
+
+        private void refresh() throws QueryReturnedNullException {
+            final Cursor c;
+            if (mPaging.offset) {
+                c = query(mQuery.selection, mQuery.selectionArgs,
+                        mPageQueries.sortOrder(mLoaded.size(), 0));
+            } else {
+                c = query(mPageQueries.keysetSelection(false),
+                        mPageQueries.keysetSelectionArgs(mLastSortKey, mLastId),
+                        mPageQueries.sortOrder(0, 0));
+            }
+
+            read(c, true);
+            // Rows may have been inserted after the loaded range
+            mExhausted = false;
+        }
+
+        @NonNull
+        private Cursor query(
+                @Nullable final String selection,
+                @Nullable final String[] selectionArgs,
+                @NonNull final String sortOrder) throws QueryReturnedNullException {
+            if (isDebugLoggingEnabled()) {
+                Log.d(TAG, mQuery.toString() + ", paged selection=" + selection
+                        + ", sortOrder=" + sortOrder);
+            }
+
+            // Cancelled on release, the drain loop then stops without emitting
+            final CancellableQuery query = new CancellableQuery();
+            synchronized (this) {
+                mQueryInFlight = query;
+            }
+
+            final Cursor c;
+            try {
+                c = query.query(mContentResolver, mQuery.contentUri, mQuery.projection,
+                        selection, selectionArgs, sortOrder);
+            } finally {
+                synchronized (this) {
+                    if (mQueryInFlight == query) {
+                        mQueryInFlight = null;
+                    }
+                }
+            }
+
+            if (c == null) {
+                throw new QueryReturnedNullException();
+            }
+            return c;
+        }
+
+        /**
+         * Maps the rows and remembers the keyset of the last row, then closes the
+         * {@link Cursor}.
+         *
+         * @param replace true to replace the loaded rows, false to append
+         * @return the number of rows read
+         */
+        private int read(@NonNull final Cursor c, final boolean replace) {
+            try {
+                if (replace) {
+                    mLoaded.clear();
+                }
+                final int idIndex = c.getColumnIndexOrThrow(mPaging.idColumn);
+                final int sortIndex = mPaging.sortColumn == null
+                        ? -1 : c.getColumnIndexOrThrow(mPaging.sortColumn);
+
+                int count = 0;
+                c.moveToPosition(-1);
+                while (c.moveToNext()) {
+                    mLoaded.add(mMapper.map(c));
+                    count++;
+                }
+                if (c.moveToLast()) {
+                    mLastId = c.getLong(idIndex);
+                    if (sortIndex != -1) {
+                        mLastSortKey = c.getString(sortIndex);
+                    }
+                }
+                return count;
+            } finally {
+                c.close();
+            }
+        }
+    }
+}
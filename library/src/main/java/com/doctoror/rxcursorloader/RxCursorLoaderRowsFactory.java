@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
+import io.reactivex.functions.BiConsumer;
+import io.reactivex.functions.Consumer;
+
+import static com.doctoror.rxcursorloader.RxCursorLoader.TAG;
+import static com.doctoror.rxcursorloader.RxCursorLoader.isDebugLoggingEnabled;
+
+/**
+ * Creates {@link Flowable}s that stream {@link Cursor} rows one by one. The {@link Cursor} is
+ * moved only when the subscriber requests the next row, and a single {@link Row} is reused for
+ * every row.
+ */
+final class RxCursorLoaderRowsFactory {
+
+    private RxCursorLoaderRowsFactory() {
+        throw new UnsupportedOperationException();
+    }
+
+    @NonNull
+    static Flowable<Row> rows(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query) {
+        //noinspection ConstantConditions
+        if (resolver == null) {
+            throw new NullPointerException("ContentResolver param must not be null");
+        }
+        //noinspection ConstantConditions
+        if (query == null) {
+            throw new NullPointerException("Params param must not be null");
+        }
+
+        return Flowable.generate(
+                new Callable<Row>() {
+
+                    @Override
+                    public Row call() throws Exception {
+                        return query(resolver, query);
+                    }
+                },
+                NEXT_ROW,
+                CLOSE_CURSOR);
+    }
+
+    @NonNull
+    private static Row query(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query) throws QueryReturnedNullException {
+        if (isDebugLoggingEnabled()) {
+            Log.d(TAG, query.toString());
+        }
+
+        final Cursor c = new CancellableQuery().query(resolver, query);
+
+        if (c == null) {
+            throw new QueryReturnedNullException();
+        }
+        c.moveToPosition(-1);
+        return new Row(c);
+    }
+
+    /**
+     * Called once per requested row.
+     */
+    private static final BiConsumer<Row, Emitter<Row>> NEXT_ROW
+            = new BiConsumer<Row, Emitter<Row>>() {
+
+        @Override
+        public void accept(final Row row, final Emitter<Row> emitter) {
+            if (row.moveToNext()) {
+                emitter.onNext(row);
+            } else {
+                emitter.onComplete();
+            }
+        }
+    };
+
+    /**
+     * Called on complete, error and cancel.
+     */
+    private static final Consumer<Row> CLOSE_CURSOR = new Consumer<Row>() {
+
+        @Override
+        public void accept(final Row row) {
+            row.close();
+        }
+    };
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.FlowableOnSubscribe;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Cancellable;
+import io.reactivex.functions.Consumer;
+
+/**
+ * Creates loaders that are shared by all subscribers of equal {@link RxCursorLoader.Query}s.
+ * <p>
+ * A shared loader registers one {@link android.database.ContentObserver} and runs one query per
+ * change no matter how many subscribers it has. Every subscriber receives its own
+ * {@link Cursor} handle over the same underlying {@link Cursor}, which is closed once the loader
+ * has moved on to a newer {@link Cursor} and every subscriber closed its handle. Subscribers
+ * that join a live loader immediately receive a handle to the latest {@link Cursor}.
+ * <p>
+ * Handles are delivered outside of the loader lock, so a slow subscriber only delays itself.
+ * A handle that a subscriber does not take because of backpressure or cancel is closed.
+ */
+final class RxCursorLoaderSharedFactory {
+
+    private static final Object sLock = new Object();
+
+    private static final Map<RxCursorLoader.Query, SharedLoader> sLoaders = new HashMap<>();
+
+    private RxCursorLoaderSharedFactory() {
+        throw new UnsupportedOperationException();
+    }
+
+    @NonNull
+    static Flowable<Cursor> create(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final Scheduler scheduler,
+            @NonNull final BackpressureStrategy backpressureStrategy,
+            @NonNull final RxCursorLoader.Options options) {
+        final Flowable<Cursor> handles = Flowable.create(new FlowableOnSubscribe<Cursor>() {
+
+            @Override
+            public void subscribe(final FlowableEmitter<Cursor> emitter) {
+                attach(resolver, query, scheduler, options, emitter);
+            }
+        }, BackpressureStrategy.MISSING);
+
+        // The emitter strategies would drop or keep handles without closing them
+        switch (backpressureStrategy) {
+            case LATEST:
+                return handles.lift(new CursorBackpressureOperator(1, scheduler, options.stats));
+
+            case DROP:
+                return handles.onBackpressureDrop(new Consumer<Cursor>() {
+
+                    @Override
+                    public void accept(final Cursor handle) {
+                        handle.close();
+                    }
+                });
+
+            default:
+                return handles.lift(new CursorBackpressureOperator(
+                        Integer.MAX_VALUE, scheduler, options.stats));
+        }
+    }
+
+    /**
+     * @return the number of live shared loaders, including the ones in grace period
+     */
+    static int getLiveLoaderCount() {
+        synchronized (sLock) {
+            return sLoaders.size();
+        }
+    }
+
+    private static void attach(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final Scheduler scheduler,
+            @NonNull final RxCursorLoader.Options options,
+            @NonNull final FlowableEmitter<Cursor> emitter) {
+        final SharedSubscriber subscriber = new SharedSubscriber(emitter);
+        final SharedLoader loader;
+        final boolean created;
+        synchronized (sLock) {
+            SharedLoader existing = sLoaders.get(query);
+            created = existing == null;
+            if (created) {
+                existing = new SharedLoader(query, scheduler, options.shareGracePeriodMillis);
+                sLoaders.put(query, existing);
+            }
+            loader = existing;
+            loader.add(subscriber);
+        }
+
+        emitter.setCancellable(new Cancellable() {
+
+            @Override
+            public void cancel() {
+                loader.remove(subscriber);
+                // Closes the handles that were not delivered
+                subscriber.drain();
+            }
+        });
+        subscriber.drain();
+
+        if (created) {
+            loader.connect(resolver, options);
+        }
+    }
+
+    /**
+     * A single loader that fans out its {@link Cursor}s to all subscribers. All state is guarded
+     * by {@link #sLock}.
+     */
+    private static final class SharedLoader {
+
+        @NonNull
+        private final RxCursorLoader.Query mQuery;
+
+        @NonNull
+        private final Scheduler mScheduler;
+
+        private final long mGracePeriodMillis;
+
+        private final List<SharedSubscriber> mSubscribers = new ArrayList<>();
+
+        private RefCountedCursor mLatest;
+
+        private Disposable mUpstream;
+
+        private Disposable mPendingTeardown;
+
+        private boolean mTornDown;
+
+        SharedLoader(
+                @NonNull final RxCursorLoader.Query query,
+                @NonNull final Scheduler scheduler,
+                final long gracePeriodMillis) {
+            mQuery = query;
+            mScheduler = scheduler;
+            mGracePeriodMillis = gracePeriodMillis;
+        }
+
+        void connect(
+                @NonNull final ContentResolver resolver,
+                @NonNull final RxCursorLoader.Options options) {
+            final Disposable upstream = RxCursorLoaderFlowableFactory
+                    .create(resolver, mQuery, mScheduler, BackpressureStrategy.BUFFER,
+                            options.unshared())
+                    .subscribe(new Consumer<Cursor>() {
+
+                        @Override
+                        public void accept(final Cursor cursor) {
+                            onNext(cursor);
+                        }
+                    }, new Consumer<Throwable>() {
+
+                        @Override
+                        public void accept(final Throwable throwable) {
+                            onError(throwable);
+                        }
+                    });
+
+            final boolean dispose;
+            synchronized (sLock) {
+                dispose = mTornDown;
+                mUpstream = upstream;
+            }
+            if (dispose) {
+                upstream.dispose();
+            }
+        }
+
+        /**
+         * Must be called while holding {@link #sLock}. The caller must
+         * {@link SharedSubscriber#drain()} the subscriber after releasing the lock.
+         */
+        void add(@NonNull final SharedSubscriber subscriber) {
+            if (mPendingTeardown != null) {
+                mPendingTeardown.dispose();
+                mPendingTeardown = null;
+            }
+            mSubscribers.add(subscriber);
+            if (mLatest != null) {
+                subscriber.offer(mLatest.acquire());
+            }
+        }
+
+        void remove(@NonNull final SharedSubscriber subscriber) {
+            final Runnable teardown;
+            synchronized (sLock) {
+                if (!mSubscribers.remove(subscriber) || !mSubscribers.isEmpty() || mTornDown) {
+                    return;
+                }
+                teardown = mGracePeriodMillis == 0 ? detach() : null;
+            }
+            if (teardown != null) {
+                teardown.run();
+                return;
+            }
+
+            final Disposable pendingTeardown = mScheduler.scheduleDirect(new Runnable() {
+
+                @Override
+                public void run() {
+                    Runnable teardown = null;
+                    synchronized (sLock) {
+                        if (mSubscribers.isEmpty() && !mTornDown) {
+                            teardown = detach();
+                        }
+                    }
+                    if (teardown != null) {
+                        teardown.run();
+                    }
+                }
+            }, mGracePeriodMillis, TimeUnit.MILLISECONDS);
+
+            synchronized (sLock) {
+                if (mSubscribers.isEmpty() && !mTornDown) {
+                    if (mPendingTeardown != null) {
+                        mPendingTeardown.dispose();
+                    }
+                    mPendingTeardown = pendingTeardown;
+                    return;
+                }
+            }
+            // Resubscribed or torn down while scheduling
+            pendingTeardown.dispose();
+        }
+
+        private void onNext(@NonNull final Cursor cursor) {
+            final RefCountedCursor previous;
+            final List<SharedSubscriber> subscribers;
+            synchronized (sLock) {
+                if (mTornDown) {
+                    cursor.close();
+                    return;
+                }
+                previous = mLatest;
+                mLatest = new RefCountedCursor(cursor);
+                subscribers = new ArrayList<>(mSubscribers);
+                for (final SharedSubscriber subscriber : subscribers) {
+                    // Queued under the lock, so that every subscriber gets them in order
+                    subscriber.offer(mLatest.acquire());
+                }
+            }
+            for (final SharedSubscriber subscriber : subscribers) {
+                subscriber.drain();
+            }
+            if (previous != null) {
+                previous.release();
+            }
+        }
+
+        private void onError(@NonNull final Throwable throwable) {
+            final List<SharedSubscriber> subscribers;
+            final Runnable teardown;
+            synchronized (sLock) {
+                if (mTornDown) {
+                    return;
+                }
+                subscribers = new ArrayList<>(mSubscribers);
+                mSubscribers.clear();
+                teardown = detach();
+                for (final SharedSubscriber subscriber : subscribers) {
+                    subscriber.offerError(throwable);
+                }
+            }
+            teardown.run();
+            for (final SharedSubscriber subscriber : subscribers) {
+                subscriber.drain();
+            }
+        }
+
+        /**
+         * Detaches the state of a loader that is torn down. Must be called while holding
+         * {@link #sLock}. Disposing the upstream unregisters the
+         * {@link android.database.ContentObserver} and releasing the latest {@link Cursor} may
+         * close it, so the caller must run the returned teardown after releasing the lock.
+         *
+         * @return the teardown to run outside of the lock
+         */
+        @NonNull
+        private Runnable detach() {
+            mTornDown = true;
+            if (sLoaders.get(mQuery) == this) {
+                sLoaders.remove(mQuery);
+            }
+            final Disposable pendingTeardown = mPendingTeardown;
+            final Disposable upstream = mUpstream;
+            final RefCountedCursor latest = mLatest;
+            mPendingTeardown = null;
+            mUpstream = null;
+            mLatest = null;
+            return new Runnable() {
+
+                @Override
+                public void run() {
+                    if (pendingTeardown != null) {
+                        pendingTeardown.dispose();
+                    }
+                    if (upstream != null) {
+                        upstream.dispose();
+                    }
+                    if (latest != null) {
+                        latest.release();
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Delivers the handles queued by a {@link SharedLoader} to one subscriber in order, without
+     * holding {@link #sLock}. Handles that arrive after cancel are closed.
+     */
+    private static final class SharedSubscriber {
+
+        @NonNull
+        private final FlowableEmitter<Cursor> mEmitter;
+
+        private final Queue<Cursor> mQueue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger mWip = new AtomicInteger();
+
+        private volatile Throwable mError;
+
+        /**
+         * Accessed from the drain loop only
+         */
+        private boolean mTerminated;
+
+        SharedSubscriber(@NonNull final FlowableEmitter<Cursor> emitter) {
+            mEmitter = emitter;
+        }
+
+        /**
+         * Must be called while holding {@link #sLock}.
+         */
+        void offer(@NonNull final Cursor handle) {
+            mQueue.offer(handle);
+        }
+
+        /**
+         * Must be called while holding {@link #sLock}. No handles may be offered after this.
+         */
+        void offerError(@NonNull final Throwable error) {
+            mError = error;
+        }
+
+        void drain() {
+            if (mWip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            while (true) {
+                while (true) {
+                    final Throwable error = mError;
+                    final Cursor handle = mQueue.poll();
+                    if (handle == null) {
+                        if (error != null && !mTerminated) {
+                            mTerminated = true;
+                            mEmitter.onError(error);
+                        }
+                        break;
+                    }
+                    if (mEmitter.isCancelled()) {
+                        handle.close();
+                    } else {
+                        mEmitter.onNext(handle);
+                    }
+                }
+
+                missed = mWip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
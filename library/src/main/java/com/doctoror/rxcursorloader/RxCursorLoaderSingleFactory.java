@@ -20,9 +20,16 @@ import android.database.Cursor;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import io.reactivex.Single;
-import io.reactivex.SingleEmitter;
-import io.reactivex.SingleOnSubscribe;
+import io.reactivex.SingleObserver;
+import io.reactivex.SingleSource;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Cancellable;
 
 import static com.doctoror.rxcursorloader.RxCursorLoader.isDebugLoggingEnabled;
 import static com.doctoror.rxcursorloader.RxCursorLoader.TAG;
@@ -33,6 +40,142 @@ final class RxCursorLoaderSingleFactory {
     static Single<Cursor> single(
             @NonNull final ContentResolver resolver,
             @NonNull final RxCursorLoader.Query query) {
+        return single(resolver, query, CursorConverter.IDENTITY);
+    }
+
+    @NonNull
+    static Single<Cursor> single(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final RxCursorLoader.Options options) {
+        //noinspection ConstantConditions
+        if (options == null) {
+            throw new NullPointerException("Options param must not be null");
+        }
+        final CursorConverter<Cursor> converter = WarmingConverter.forOptions(options);
+        if (options.singleFlight) {
+            return singleFlight(resolver, query, query, options, converter,
+                    SingleFlight.Sharing.CURSORS);
+        }
+        return single(resolver, query, options.reuseProviderClient, converter);
+    }
+
+    /**
+     * Creates a {@link Single} that emits an immutable snapshot of {@link Cursor} rows mapped
+     * with {@link RowMapper}. The {@link Cursor} is closed right after mapping.
+     */
+    @NonNull
+    static <T> Single<List<T>> singleMapped(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final RowMapper<T> mapper) {
+        return single(resolver, query, new SnapshotConverter<>(mapper));
+    }
+
+    /**
+     * Same as {@link #singleMapped(ContentResolver, RxCursorLoader.Query, RowMapper)}, but
+     * shares the query between concurrent subscriptions with equal {@link RowMapper}s when
+     * {@link RxCursorLoader.Options#singleFlight} is set.
+     */
+    @NonNull
+    static <T> Single<List<T>> singleMapped(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final RxCursorLoader.Options options,
+            @NonNull final RowMapper<T> mapper) {
+        //noinspection ConstantConditions
+        if (options == null) {
+            throw new NullPointerException("Options param must not be null");
+        }
+        //noinspection ConstantConditions
+        if (mapper == null) {
+            throw new NullPointerException("RowMapper param must not be null");
+        }
+        final CursorConverter<List<T>> converter = new SnapshotConverter<>(mapper);
+        if (options.singleFlight) {
+            // The mapper is a part of the key, since it defines the emitted item
+            return singleFlight(resolver, query, Arrays.asList(query, mapper), options,
+                    converter, new SingleFlight.ImmutableSharing<List<T>>());
+        }
+        return single(resolver, query, options.reuseProviderClient, converter);
+    }
+
+    /**
+     * Creates a {@link Single} that emits the fresh snapshot from {@link QueryCache} if any, or
+     * loads and caches it otherwise.
+     */
+    @NonNull
+    static <T> Single<List<T>> singleCached(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final RowMapper<T> mapper,
+            @NonNull final QueryCache cache) {
+        //noinspection ConstantConditions
+        if (cache == null) {
+            throw new NullPointerException("QueryCache param must not be null");
+        }
+        //noinspection ConstantConditions
+        if (mapper == null) {
+            throw new NullPointerException("RowMapper param must not be null");
+        }
+
+        return Single.defer(new Callable<SingleSource<List<T>>>() {
+
+            @Override
+            public SingleSource<List<T>> call() {
+                final CachingConverter<T> converter = new CachingConverter<>(
+                        cache, resolver, query, mapper);
+                final List<T> cached = converter.cached();
+                if (cached != null) {
+                    converter.release();
+                    return Single.just(cached);
+                }
+                return single(resolver, query, converter).doFinally(new Action() {
+
+                    @Override
+                    public void run() {
+                        converter.release();
+                    }
+                });
+            }
+        });
+    }
+
+    @NonNull
+    private static <T> Single<T> single(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final CursorConverter<T> converter) {
+        return single(resolver, query, false, converter);
+    }
+
+    @NonNull
+    private static <T> Single<T> single(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            final boolean reuseProviderClient,
+            @NonNull final CursorConverter<T> converter) {
+        //noinspection ConstantConditions
+        if (resolver == null) {
+            throw new NullPointerException("ContentResolver param must not be null");
+        }
+        //noinspection ConstantConditions
+        if (query == null) {
+            throw new NullPointerException("Params param must not be null");
+        }
+
+        return Single.unsafeCreate(new CursorLoaderSingleSource<>(
+                resolver, query, reuseProviderClient, converter));
+    }
+
+    @NonNull
+    private static <T> Single<T> singleFlight(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final Object key,
+            @NonNull final RxCursorLoader.Options options,
+            @NonNull final CursorConverter<T> converter,
+            @NonNull final SingleFlight.Sharing<T> sharing) {
         //noinspection ConstantConditions
         if (resolver == null) {
             throw new NullPointerException("ContentResolver param must not be null");
@@ -42,11 +185,11 @@ final class RxCursorLoaderSingleFactory {
             throw new NullPointerException("Params param must not be null");
         }
 
-        return Single.create(new CursorLoaderOnSubscribeSingle(resolver, query));
+        return Single.unsafeCreate(new SingleFlight<>(
+                resolver, query, key, options.reuseProviderClient, converter, sharing));
     }
 
-    private static final class CursorLoaderOnSubscribeSingle
-            implements SingleOnSubscribe<Cursor> {
+    private static final class CursorLoaderSingleSource<T> implements SingleSource<T> {
 
         @NonNull
         private final ContentResolver mContentResolver;
@@ -54,30 +197,95 @@ final class RxCursorLoaderSingleFactory {
         @NonNull
         private final RxCursorLoader.Query mQuery;
 
-        CursorLoaderOnSubscribeSingle(
+        private final boolean mReuseProviderClient;
+
+        @NonNull
+        private final CursorConverter<T> mConverter;
+
+        CursorLoaderSingleSource(
                 @NonNull final ContentResolver resolver,
-                @NonNull final RxCursorLoader.Query query) {
+                @NonNull final RxCursorLoader.Query query,
+                final boolean reuseProviderClient,
+                @NonNull final CursorConverter<T> converter) {
             mContentResolver = resolver;
             mQuery = query;
+            mReuseProviderClient = reuseProviderClient;
+            mConverter = converter;
         }
 
         @Override
-        public void subscribe(final SingleEmitter<Cursor> emitter) {
+        public void subscribe(final SingleObserver<? super T> observer) {
+            final SingleDelivery<T> delivery = new SingleDelivery<>(observer);
+            observer.onSubscribe(delivery);
+            try {
+                load(delivery);
+            } catch (Throwable e) {
+                Exceptions.throwIfFatal(e);
+                delivery.onError(e);
+            }
+        }
+
+        private void load(@NonNull final SingleDelivery<T> delivery) throws Exception {
             if (isDebugLoggingEnabled()) {
                 Log.d(TAG, mQuery.toString());
             }
 
-            final Cursor c = mContentResolver.query(
-                    mQuery.contentUri,
-                    mQuery.projection,
-                    mQuery.selection,
-                    mQuery.selectionArgs,
-                    mQuery.sortOrder);
-
-            if (c != null) {
-                emitter.onSuccess(c);
-            } else {
-                emitter.onError(new QueryReturnedNullException());
+            final CancellableQuery query = new CancellableQuery();
+            delivery.setCancellable(new Cancellable() {
+
+                @Override
+                public void cancel() {
+                    query.cancel();
+                }
+            });
+
+            final MetricsListener metrics = RxCursorLoader.getMetricsListener();
+            final long queryStart = metrics != null ? System.nanoTime() : 0;
+
+            final ProviderClients.Lease client = mReuseProviderClient
+                    ? ProviderClients.acquire(mContentResolver, mQuery.contentUri) : null;
+            final Cursor c;
+            try {
+                c = query.query(mContentResolver, client, mQuery);
+            } catch (RuntimeException e) {
+                if (query.isCanceled()) {
+                    // Disposed while querying
+                    return;
+                }
+                throw e;
+            } finally {
+                if (client != null) {
+                    client.release();
+                }
+            }
+            final long queryNanos = metrics != null ? System.nanoTime() - queryStart : 0;
+
+            if (c == null) {
+                delivery.onError(new QueryReturnedNullException());
+                return;
+            }
+
+            if (query.isCanceled()) {
+                c.close();
+                return;
+            }
+
+            final T item;
+            try {
+                if (metrics != null) {
+                    QueryMetrics.report(metrics, mQuery, c, queryNanos);
+                }
+                item = mConverter.convert(c);
+            } catch (Exception e) {
+                if (query.isCanceled()) {
+                    return;
+                }
+                throw e;
+            }
+
+            // Release the item if disposed before the observer took it
+            if (query.isCanceled() || !delivery.tryOnSuccess(item)) {
+                mConverter.discard(item);
             }
         }
     }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.SingleObserver;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.functions.Cancellable;
+import io.reactivex.plugins.RxJavaPlugins;
+
+/**
+ * Delivers the result of a {@link io.reactivex.Single} source to its {@link SingleObserver}.
+ * <p>
+ * {@link io.reactivex.SingleEmitter} silently drops an item emitted after dispose, which leaks
+ * the item if it must be closed. {@link #tryOnSuccess(Object)} instead tells whether the item
+ * was delivered, and dispose can not win once it did, so that the caller can release an item
+ * nobody took.
+ *
+ * @param <T> the type of the item
+ */
+final class SingleDelivery<T> implements Disposable {
+
+    private static final Cancellable DISPOSED = new Cancellable() {
+
+        @Override
+        public void cancel() {
+            // Marks that dispose ran the Cancellable
+        }
+    };
+
+    @NonNull
+    private final SingleObserver<? super T> mObserver;
+
+    /**
+     * Set once by dispose or by the result
+     */
+    private final AtomicBoolean mDone = new AtomicBoolean();
+
+    private final AtomicReference<Cancellable> mCancellable = new AtomicReference<>();
+
+    SingleDelivery(@NonNull final SingleObserver<? super T> observer) {
+        mObserver = observer;
+    }
+
+    /**
+     * Sets the {@link Cancellable} to run on dispose, or runs it right away if already
+     * disposed. It is not run once the result was delivered.
+     */
+    void setCancellable(@NonNull final Cancellable cancellable) {
+        if (!mCancellable.compareAndSet(null, cancellable)) {
+            cancel(cancellable);
+        }
+    }
+
+    /**
+     * @param item the item to deliver
+     * @return false if disposed or already terminated, in which case the caller still owns
+     * the item
+     */
+    boolean tryOnSuccess(@NonNull final T item) {
+        if (!mDone.compareAndSet(false, true)) {
+            return false;
+        }
+        mObserver.onSuccess(item);
+        return true;
+    }
+
+    /**
+     * @param error the error to deliver
+     * @return false if disposed or already terminated
+     */
+    boolean tryOnError(@NonNull final Throwable error) {
+        if (!mDone.compareAndSet(false, true)) {
+            return false;
+        }
+        mObserver.onError(error);
+        return true;
+    }
+
+    /**
+     * Like {@link #tryOnError(Throwable)}, but passes an undeliverable error to
+     * {@link RxJavaPlugins#onError(Throwable)} like {@link io.reactivex.SingleEmitter} does.
+     */
+    void onError(@NonNull final Throwable error) {
+        if (!tryOnError(error)) {
+            RxJavaPlugins.onError(error);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (mDone.compareAndSet(false, true)) {
+            final Cancellable cancellable = mCancellable.getAndSet(DISPOSED);
+            if (cancellable != null) {
+                cancel(cancellable);
+            }
+        }
+    }
+
+    /**
+     * @return true if disposed or terminated
+     */
+    @Override
+    public boolean isDisposed() {
+        return mDone.get();
+    }
+
+    private static void cancel(@NonNull final Cancellable cancellable) {
+        try {
+            cancellable.cancel();
+        } catch (Exception e) {
+            Exceptions.throwIfFatal(e);
+            RxJavaPlugins.onError(e);
+        }
+    }
+}
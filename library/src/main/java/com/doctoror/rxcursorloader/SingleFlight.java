@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.SingleObserver;
+import io.reactivex.SingleSource;
+import io.reactivex.functions.Cancellable;
+
+import static com.doctoror.rxcursorloader.RxCursorLoader.TAG;
+import static com.doctoror.rxcursorloader.RxCursorLoader.isDebugLoggingEnabled;
+
+/**
+ * Lets concurrent {@link io.reactivex.Single} subscriptions for equal keys share one query.
+ * The first subscription runs the query on its own thread and later ones attach to it until
+ * the result is delivered, so that a burst of equal queries costs one provider round trip.
+ * Every subscriber gets its own view of the result from {@link Sharing}.
+ * <p>
+ * Only subscriptions that overlap share a query. Once the result is delivered, the next
+ * subscription queries again.
+ *
+ * @param <T> the type of the emitted item
+ */
+final class SingleFlight<T> implements SingleSource<T> {
+
+    /**
+     * Queries in flight by key. Guards the state of all {@link Flight}s.
+     */
+    private static final Map<Object, Flight> sFlights = new HashMap<>();
+
+    @NonNull
+    private final ContentResolver mContentResolver;
+
+    @NonNull
+    private final RxCursorLoader.Query mQuery;
+
+    @NonNull
+    private final Object mKey;
+
+    private final boolean mReuseProviderClient;
+
+    @NonNull
+    private final CursorConverter<T> mConverter;
+
+    @NonNull
+    private final Sharing<T> mSharing;
+
+    /**
+     * @param resolver  the {@link ContentResolver} to query with if this subscription leads
+     * @param query     the {@link RxCursorLoader.Query} to run
+     * @param key       the key of equal subscriptions, which must also identify the converter
+     * @param reuseProviderClient whether to query through {@link ProviderClients}
+     * @param converter the {@link CursorConverter} to convert the result with once
+     * @param sharing   the {@link Sharing} of the converted result
+     */
+    SingleFlight(
+            @NonNull final ContentResolver resolver,
+            @NonNull final RxCursorLoader.Query query,
+            @NonNull final Object key,
+            final boolean reuseProviderClient,
+            @NonNull final CursorConverter<T> converter,
+            @NonNull final Sharing<T> sharing) {
+        mContentResolver = resolver;
+        mQuery = query;
+        mKey = key;
+        mReuseProviderClient = reuseProviderClient;
+        mConverter = converter;
+        mSharing = sharing;
+    }
+
+    static int getFlightCount() {
+        synchronized (sFlights) {
+            return sFlights.size();
+        }
+    }
+
+    @Override
+    public void subscribe(final SingleObserver<? super T> observer) {
+        final SingleDelivery<T> delivery = new SingleDelivery<>(observer);
+        observer.onSubscribe(delivery);
+
+        final Flight flight;
+        final boolean leader;
+        synchronized (sFlights) {
+            final Flight current = sFlights.get(mKey);
+            leader = current == null;
+            flight = leader ? new Flight() : current;
+            if (leader) {
+                sFlights.put(mKey, flight);
+            }
+            flight.waiters.add(delivery);
+        }
+        delivery.setCancellable(new Cancellable() {
+
+            @Override
+            public void cancel() {
+                leave(flight, delivery);
+            }
+        });
+
+        if (!leader) {
+            if (isDebugLoggingEnabled()) {
+                Log.d(TAG, "Joined in-flight " + mQuery.toString());
+            }
+            return;
+        }
+
+        if (isDebugLoggingEnabled()) {
+            Log.d(TAG, mQuery.toString());
+        }
+        try {
+            load(flight);
+        } catch (Exception e) {
+            deliverError(flight, e);
+        }
+    }
+
+    /**
+     * Removes the disposed subscriber and cancels the query if nobody waits for it anymore.
+     */
+    private void leave(@NonNull final Flight flight, @NonNull final SingleDelivery<?> waiter) {
+        synchronized (sFlights) {
+            flight.waiters.remove(waiter);
+            if (!flight.waiters.isEmpty() || flight.landed) {
+                return;
+            }
+            flight.landed = true;
+            sFlights.remove(mKey);
+        }
+        flight.query.cancel();
+    }
+
+    private void load(@NonNull final Flight flight) throws Exception {
+        final MetricsListener metrics = RxCursorLoader.getMetricsListener();
+        final long queryStart = metrics != null ? System.nanoTime() : 0;
+
+        final ProviderClients.Lease client = mReuseProviderClient
+                ? ProviderClients.acquire(mContentResolver, mQuery.contentUri) : null;
+        final Cursor c;
+        try {
+            c = flight.query.query(mContentResolver, client, mQuery);
+        } catch (RuntimeException e) {
+            if (flight.query.isCanceled()) {
+                // All subscribers left
+                return;
+            }
+            throw e;
+        } finally {
+            if (client != null) {
+                client.release();
+            }
+        }
+        final long queryNanos = metrics != null ? System.nanoTime() - queryStart : 0;
+
+        if (c == null) {
+            throw new QueryReturnedNullException();
+        }
+
+        if (flight.query.isCanceled()) {
+            c.close();
+            return;
+        }
+
+        if (metrics != null) {
+            QueryMetrics.report(metrics, mQuery, c, queryNanos);
+        }
+        deliver(flight, mConverter.convert(c));
+    }
+
+    private void deliver(@NonNull final Flight flight, @NonNull final T item) {
+        final List<SingleDelivery<T>> waiters = land(flight);
+        if (waiters == null) {
+            // All subscribers left while converting
+            mConverter.discard(item);
+            return;
+        }
+
+        final Shared<T> shared = mSharing.share(item);
+        try {
+            for (final SingleDelivery<T> waiter : waiters) {
+                if (waiter.isDisposed()) {
+                    continue;
+                }
+                final T view = shared.acquire();
+                if (!waiter.tryOnSuccess(view)) {
+                    // Disposed meanwhile
+                    shared.discard(view);
+                }
+            }
+        } finally {
+            shared.release();
+        }
+    }
+
+    private void deliverError(@NonNull final Flight flight, @NonNull final Throwable error) {
+        final List<SingleDelivery<T>> waiters = land(flight);
+        if (waiters != null) {
+            for (final SingleDelivery<T> waiter : waiters) {
+                waiter.tryOnError(error);
+            }
+        }
+    }
+
+    /**
+     * Ends the flight, so that later subscriptions query again.
+     *
+     * @return the subscribers to deliver the result to, null if the flight was cancelled
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private List<SingleDelivery<T>> land(@NonNull final Flight flight) {
+        synchronized (sFlights) {
+            if (flight.landed) {
+                return null;
+            }
+            flight.landed = true;
+            sFlights.remove(mKey);
+            final List<SingleDelivery<T>> waiters = new ArrayList<>(flight.waiters.size());
+            for (final SingleDelivery<?> waiter : flight.waiters) {
+                // The key identifies the item type
+                waiters.add((SingleDelivery<T>) waiter);
+            }
+            return waiters;
+        }
+    }
+
+    /**
+     * A query in flight. Guarded by {@link #sFlights}.
+     */
+    private static final class Flight {
+
+        final CancellableQuery query = new CancellableQuery();
+
+        final List<SingleDelivery<?>> waiters = new ArrayList<>();
+
+        /**
+         * Whether the result was delivered or the query was cancelled
+         */
+        boolean landed;
+    }
+
+    /**
+     * Hands out views of one loaded item to several subscribers.
+     *
+     * @param <T> the type of the item
+     */
+    interface Sharing<T> {
+
+        /**
+         * Shares a loaded {@link Cursor} through {@link RefCountedCursor} handles, each with
+         * its own position. The underlying {@link Cursor} is closed once every subscriber
+         * closed its handle.
+         */
+        Sharing<Cursor> CURSORS = new Sharing<Cursor>() {
+
+            @NonNull
+            @Override
+            public Shared<Cursor> share(@NonNull final Cursor item) {
+                return new RefCountedCursor(item);
+            }
+        };
+
+        /**
+         * @param item the loaded item, released by the caller after handing out the views
+         * @return the {@link Shared} item
+         */
+        @NonNull
+        Shared<T> share(@NonNull T item);
+    }
+
+    /**
+     * An item with views for several subscribers.
+     *
+     * @param <T> the type of the item
+     */
+    interface Shared<T> {
+
+        /**
+         * @return a new view of the item for a subscriber
+         */
+        @NonNull
+        T acquire();
+
+        /**
+         * Releases a view that could not be delivered.
+         *
+         * @param view the view from {@link #acquire()}
+         */
+        void discard(@NonNull T view);
+
+        /**
+         * Releases the item once all views are handed out.
+         */
+        void release();
+    }
+
+    /**
+     * Shares an immutable item as is.
+     *
+     * @param <T> the type of the item
+     */
+    static final class ImmutableSharing<T> implements Sharing<T> {
+
+        @NonNull
+        @Override
+        public Shared<T> share(@NonNull final T item) {
+            return new Shared<T>() {
+
+                @NonNull
+                @Override
+                public T acquire() {
+                    return item;
+                }
+
+                @Override
+                public void discard(@NonNull final T view) {
+                    // Nothing to release
+                }
+
+                @Override
+                public void release() {
+                    // Nothing to release
+                }
+            };
+        }
+    }
+}
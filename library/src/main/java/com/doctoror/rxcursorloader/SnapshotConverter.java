@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Materializes every row of a {@link Cursor} with a {@link RowMapper} into an immutable
+ * {@link List} and closes the {@link Cursor}.
+ *
+ * @param <T> the type of the mapped rows
+ */
+final class SnapshotConverter<T> implements CursorConverter<List<T>> {
+
+    @NonNull
+    private final RowMapper<T> mMapper;
+
+    SnapshotConverter(@NonNull final RowMapper<T> mapper) {
+        //noinspection ConstantConditions
+        if (mapper == null) {
+            throw new NullPointerException("RowMapper param must not be null");
+        }
+        mMapper = mapper;
+    }
+
+    @NonNull
+    @Override
+    public List<T> convert(@NonNull final Cursor cursor) {
+        try {
+            final List<T> items = new ArrayList<>(cursor.getCount());
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                items.add(mMapper.map(cursor));
+            }
+            return Collections.unmodifiableList(items);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void discard(@NonNull final List<T> item) {
+        // Nothing to release
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * An immutable snapshot of mapped rows along with the {@link ChangeSet} since the previous
+ * snapshot.
+ *
+ * @param <T> the type of the mapped rows
+ */
+public final class SnapshotDiff<T> {
+
+    @NonNull
+    private final List<T> mItems;
+
+    @NonNull
+    private final ChangeSet mChangeSet;
+
+    SnapshotDiff(@NonNull final List<T> items, @NonNull final ChangeSet changeSet) {
+        mItems = items;
+        mChangeSet = changeSet;
+    }
+
+    /**
+     * @return the unmodifiable {@link List} of mapped rows
+     */
+    @NonNull
+    public List<T> getItems() {
+        return mItems;
+    }
+
+    /**
+     * @return the changes since the previous snapshot. For the first snapshot every row is
+     * reported as inserted.
+     */
+    @NonNull
+    public ChangeSet getChangeSet() {
+        return mChangeSet;
+    }
+
+    @Override
+    public String toString() {
+        return "SnapshotDiff{" +
+                "items=" + mItems +
+                ", changeSet=" + mChangeSet +
+                '}';
+    }
+}
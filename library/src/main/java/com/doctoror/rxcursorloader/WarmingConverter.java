@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Emits the {@link Cursor} as is after forcing it to count its rows. For SQLite backed
+ * {@link Cursor}s this fills the first {@link android.database.CursorWindow}, so that the
+ * subscriber does not pay for it on its own thread. The {@link Cursor} position is not changed.
+ */
+final class WarmingConverter implements CursorConverter<Cursor> {
+
+    @Nullable
+    private final LoaderStats mStats;
+
+    WarmingConverter(@Nullable final LoaderStats stats) {
+        mStats = stats;
+    }
+
+    @NonNull
+    static CursorConverter<Cursor> forOptions(@NonNull final RxCursorLoader.Options options) {
+        return options.warm ? new WarmingConverter(options.stats) : CursorConverter.IDENTITY;
+    }
+
+    @NonNull
+    @Override
+    public Cursor convert(@NonNull final Cursor cursor) {
+        final long start = System.nanoTime();
+        try {
+            cursor.getCount();
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+        if (mStats != null) {
+            mStats.onCursorWarmed(System.nanoTime() - start);
+        }
+        return cursor;
+    }
+
+    @Override
+    public void discard(@NonNull final Cursor item) {
+        item.close();
+    }
+}
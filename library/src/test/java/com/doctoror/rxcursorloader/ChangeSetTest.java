@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class ChangeSetTest {
+
+    @NonNull
+    private static List<String> items(@NonNull final long[] ids, @NonNull final String suffix) {
+        final List<String> items = new ArrayList<>(ids.length);
+        for (final long id : ids) {
+            items.add(id + suffix);
+        }
+        return items;
+    }
+
+    @NonNull
+    private static ChangeSet compute(@NonNull final long[] oldIds, @NonNull final long[] newIds) {
+        return ChangeSet.compute(oldIds, items(oldIds, ""), newIds, items(newIds, ""));
+    }
+
+    @Test
+    public void sameSnapshotsProduceEmptyChangeSet() {
+        final ChangeSet changeSet = compute(new long[]{1, 2, 3}, new long[]{1, 2, 3});
+        assertTrue(changeSet.isEmpty());
+    }
+
+    @Test
+    public void firstSnapshotIsReportedAsInserted() {
+        final ChangeSet changeSet = compute(new long[0], new long[]{5, 6, 7});
+        assertArrayEquals(new int[]{0, 1, 2}, changeSet.getInsertedPositions());
+        assertEquals(0, changeSet.getRemovedPositions().length);
+        assertEquals(0, changeSet.getMoveCount());
+    }
+
+    @Test
+    public void detectsInsertedAndRemovedRows() {
+        final ChangeSet changeSet = compute(new long[]{1, 2, 3, 4}, new long[]{1, 5, 3, 6});
+        assertArrayEquals(new int[]{1, 3}, changeSet.getRemovedPositions());
+        assertArrayEquals(new int[]{1, 3}, changeSet.getInsertedPositions());
+        assertEquals(0, changeSet.getMoveCount());
+        assertEquals(0, changeSet.getChangedPositions().length);
+    }
+
+    @Test
+    public void detectsChangedRowsByContent() {
+        final long[] ids = new long[]{1, 2, 3};
+        final List<String> newItems = items(ids, "");
+        newItems.set(2, "changed");
+
+        final ChangeSet changeSet = ChangeSet.compute(ids, items(ids, ""), ids, newItems);
+        assertArrayEquals(new int[]{2}, changeSet.getChangedPositions());
+        assertFalse(changeSet.isEmpty());
+    }
+
+    @Test
+    public void detectsMovedRow() {
+        final ChangeSet changeSet = compute(new long[]{1, 2, 3, 4}, new long[]{2, 3, 4, 1});
+        assertEquals(1, changeSet.getMoveCount());
+        assertEquals(0, changeSet.getMovedFrom(0));
+        assertEquals(3, changeSet.getMovedTo(0));
+        assertEquals(0, changeSet.getInsertedPositions().length);
+        assertEquals(0, changeSet.getRemovedPositions().length);
+    }
+
+    @Test
+    public void duplicateIdsAreReportedAsInserted() {
+        final ChangeSet changeSet = compute(new long[]{1}, new long[]{1, 1});
+        assertArrayEquals(new int[]{1}, changeSet.getInsertedPositions());
+    }
+
+    @Test
+    public void largeShuffledSnapshotRetainsAllRows() {
+        final int count = 50000;
+        final long[] oldIds = new long[count];
+        final List<Long> shuffled = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            oldIds[i] = i * 31L;
+            shuffled.add(oldIds[i]);
+        }
+        Collections.shuffle(shuffled, new Random(42));
+        final long[] newIds = new long[count];
+        for (int i = 0; i < count; i++) {
+            newIds[i] = shuffled.get(i);
+        }
+
+        final ChangeSet changeSet = compute(oldIds, newIds);
+        assertEquals(0, changeSet.getInsertedPositions().length);
+        assertEquals(0, changeSet.getRemovedPositions().length);
+        assertEquals(0, changeSet.getChangedPositions().length);
+        assertTrue(changeSet.getMoveCount() > 0);
+        assertTrue(changeSet.getMoveCount() < count);
+        for (int i = 0; i < changeSet.getMoveCount(); i++) {
+            assertEquals(oldIds[changeSet.getMovedFrom(i)], newIds[changeSet.getMovedTo(i)]);
+        }
+    }
+}
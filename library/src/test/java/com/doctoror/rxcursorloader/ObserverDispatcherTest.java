@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public final class ObserverDispatcherTest {
+
+    private final ObserverDispatcher dispatcher = new ObserverDispatcher();
+
+    @Test
+    public void startsNoThreadsUntilAcquired() {
+        assertEquals(0, dispatcher.getLiveThreadCount());
+    }
+
+    @Test
+    public void threadCountStaysFlatForManyLeases() {
+        final List<ObserverDispatcher.Lease> leases = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            leases.add(dispatcher.acquire());
+        }
+
+        assertEquals(ObserverDispatcher.DEFAULT_THREAD_COUNT, dispatcher.getLiveThreadCount());
+
+        for (final ObserverDispatcher.Lease lease : leases) {
+            lease.release();
+        }
+
+        assertEquals(0, dispatcher.getLiveThreadCount());
+    }
+
+    @Test
+    public void spreadsLeasesAcrossThreads() {
+        final ObserverDispatcher.Lease first = dispatcher.acquire();
+        final ObserverDispatcher.Lease second = dispatcher.acquire();
+        final ObserverDispatcher.Lease third = dispatcher.acquire();
+
+        assertNotSame(first.getHandler().getLooper(), second.getHandler().getLooper());
+        assertSame(first.getHandler().getLooper(), third.getHandler().getLooper());
+
+        first.release();
+        second.release();
+        third.release();
+    }
+
+    @Test
+    public void releaseTwiceHasNoEffect() {
+        final ObserverDispatcher.Lease first = dispatcher.acquire();
+        final ObserverDispatcher.Lease second = dispatcher.acquire();
+        final ObserverDispatcher.Lease third = dispatcher.acquire();
+
+        third.release();
+        third.release();
+
+        assertEquals(2, dispatcher.getLiveThreadCount());
+
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void loweringThreadCountKeepsLiveThreadsUntilReleased() {
+        final ObserverDispatcher.Lease first = dispatcher.acquire();
+        final ObserverDispatcher.Lease second = dispatcher.acquire();
+
+        dispatcher.setThreadCount(1);
+        assertEquals(2, dispatcher.getLiveThreadCount());
+
+        second.release();
+        assertEquals(1, dispatcher.getLiveThreadCount());
+
+        first.release();
+        assertEquals(0, dispatcher.getLiveThreadCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveThreadCountThrowsIllegalArgumentException() {
+        dispatcher.setThreadCount(0);
+    }
+}
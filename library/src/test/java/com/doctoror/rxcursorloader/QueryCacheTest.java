@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2018 Yaroslav Mytkalyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.doctoror.rxcursorloader;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.List;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public final class QueryCacheTest {
+
+    private static final Uri URI = new Uri.Builder().scheme("content")
+            .authority("com.doctoror.rxcursorloader.test.provider").build();
+
+    private static final RowMapper<String> ARTIST_MAPPER = new RowMapper<String>() {
+
+        @NonNull
+        @Override
+        public String map(@NonNull final Cursor cursor) {
+            return cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Audio.Artists.ARTIST));
+        }
+    };
+
+    private static final List<String> ARTISTS = Arrays.asList("Oh Long Johnson", "Oh Don Piano");
+
+    private final ContentResolver contentResolver = mock(ContentResolver.class);
+
+    private final QueryCache cache = new QueryCache.Builder().create();
+
+    @Before
+    public void setup() {
+        when(anyQuery(contentResolver))
+                .thenAnswer(new Answer<Cursor>() {
+
+                    @Override
+                    public Cursor answer(final InvocationOnMock invocation) {
+                        final MatrixCursor cursor = new MatrixCursor(new String[]{
+                                MediaStore.Audio.Artists._ID,
+                                MediaStore.Audio.Artists.ARTIST
+                        });
+                        cursor.addRow(new Object[]{1L, ARTISTS.get(0)});
+                        cursor.addRow(new Object[]{2L, ARTISTS.get(1)});
+                        return cursor;
+                    }
+                });
+    }
+
+    @NonNull
+    private static RxCursorLoader.Query buildQuery(@NonNull final String selection) {
+        return new RxCursorLoader.Query.Builder()
+                .setContentUri(URI)
+                .setSelection(selection)
+                .create();
+    }
+
+    @Nullable
+    private static Cursor anyQuery(@NonNull final ContentResolver resolver) {
+        return resolver.query(eq(URI), (String[]) any(), (String) any(), (String[]) any(),
+                (String) any(), (CancellationSignal) any());
+    }
+
+    private void verifyQueryCount(final int count) {
+        anyQuery(verify(contentResolver, times(count)));
+    }
+
+    @NonNull
+    private ContentObserver captureCacheObserver() {
+        final ArgumentCaptor<ContentObserver> captor = ArgumentCaptor
+                .forClass(ContentObserver.class);
+        verify(contentResolver).registerContentObserver(eq(URI), anyBoolean(), captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    public void singleServesHitWithoutQuery() {
+        final RxCursorLoader.Query query = buildQuery("a");
+
+        RxCursorLoader.single(contentResolver, query, ARTIST_MAPPER, cache)
+                .test()
+                .assertValue(ARTISTS);
+
+        RxCursorLoader.single(contentResolver, query, ARTIST_MAPPER, cache)
+                .test()
+                .assertValue(ARTISTS);
+
+        verifyQueryCount(1);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void differentMapperIsMiss() {
+        final RxCursorLoader.Query query = buildQuery("a");
+        final RowMapper<Long> idMapper = new RowMapper<Long>() {
+
+            @NonNull
+            @Override
+            public Long map(@NonNull final Cursor cursor) {
+                return cursor.getLong(0);
+            }
+        };
+
+        RxCursorLoader.single(contentResolver, query, ARTIST_MAPPER, cache).test();
+        RxCursorLoader.single(contentResolver, query, idMapper, cache)
+                .test()
+                .assertValue(Arrays.asList(1L, 2L));
+
+        verifyQueryCount(2);
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void changeMarksEntryStale() {
+        final RxCursorLoader.Query query = buildQuery("a");
+
+        RxCursorLoader.single(contentResolver, query, ARTIST_MAPPER, cache).test();
+        captureCacheObserver().onChange(false);
+        RxCursorLoader.single(contentResolver, query, ARTIST_MAPPER, cache).test();
+
+        verifyQueryCount(2);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedByEntryCount() {
+        final QueryCache cache = new QueryCache.Builder().setMaxEntries(2).create();
+
+        RxCursorLoader.single(contentResolver, buildQuery("a"), ARTIST_MAPPER, cache).test();
+        RxCursorLoader.single(contentResolver, buildQuery("b"), ARTIST_MAPPER, cache).test();
+
+        // Touch "a" so that "b" is the eldest
+        RxCursorLoader.single(contentResolver, buildQuery("a"), ARTIST_MAPPER, cache).test();
+        RxCursorLoader.single(contentResolver, buildQuery("c"), ARTIST_MAPPER, cache).test();
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        RxCursorLoader.single(contentResolver, buildQuery("a"), ARTIST_MAPPER, cache).test();
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void evictsBySize() {
+        final QueryCache cache = new QueryCache.Builder()
+                .setMaxSizeBytes(3 * QueryCache.DEFAULT_ROW_SIZE_BYTES)
+                .create();
+
+        RxCursorLoader.single(contentResolver, buildQuery("a"), ARTIST_MAPPER, cache).test();
+        assertEquals(2 * QueryCache.DEFAULT_ROW_SIZE_BYTES, cache.getSizeBytes());
+
+        RxCursorLoader.single(contentResolver, buildQuery("b"), ARTIST_MAPPER, cache).test();
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2 * QueryCache.DEFAULT_ROW_SIZE_BYTES, cache.getSizeBytes());
+    }
+
+    @Test
+    public void clearUnregistersObservers() {
+        RxCursorLoader.single(contentResolver, buildQuery("a"), ARTIST_MAPPER, cache).test();
+        final ContentObserver observer = captureCacheObserver();
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        verify(contentResolver).unregisterContentObserver(observer);
+    }
+
+    @Test
+    public void failedQueryUnregistersObserver() {
+        when(anyQuery(contentResolver)).thenReturn(null);
+
+        RxCursorLoader.single(contentResolver, buildQuery("a"), ARTIST_MAPPER, cache)
+                .test()
+                .assertNoValues();
+
+        verify(contentResolver).unregisterContentObserver(captureCacheObserver());
+    }
+
+    @Test
+    public void droppingLastStaleEntryUnregistersObserver() {
+        final RxCursorLoader.Query query = buildQuery("a");
+
+        RxCursorLoader.single(contentResolver, query, ARTIST_MAPPER, cache).test();
+        final ContentObserver observer = captureCacheObserver();
+        observer.onChange(false);
+
+        // The stale entry is dropped and the query that would replace it fails
+        when(anyQuery(contentResolver)).thenReturn(null);
+        RxCursorLoader.single(contentResolver, query, ARTIST_MAPPER, cache).test();
+
+        assertEquals(0, cache.size());
+        verify(contentResolver).unregisterContentObserver(observer);
+    }
+
+    @Test
+    public void observerHonorsNotifyForDescendants() {
+        final RxCursorLoader.Query query = new RxCursorLoader.Query.Builder()
+                .setContentUri(URI)
+                .setNotifyForDescendants(false)
+                .create();
+
+        RxCursorLoader.single(contentResolver, query, ARTIST_MAPPER, cache).test();
+
+        verify(contentResolver).registerContentObserver(eq(URI), eq(false),
+                any(ContentObserver.class));
+    }
+
+    @Test
+    public void flowableServesHitAndSkipsFirstQuery() {
+        final RxCursorLoader.Query query = buildQuery("a");
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setCache(cache)
+                .create();
+
+        RxCursorLoader.single(contentResolver, query, ARTIST_MAPPER, cache).test();
+
+        final TestSubscriber<List<String>> observer = RxCursorLoader.flowable(
+                contentResolver,
+                query,
+                Schedulers.trampoline(),
+                BackpressureStrategy.LATEST,
+                options,
+                ARTIST_MAPPER).test();
+
+        observer.assertValue(ARTISTS);
+        verifyQueryCount(1);
+        assertEquals(1, cache.getHitCount());
+
+        observer.dispose();
+    }
+}
@@ -15,32 +15,77 @@
  */
 package com.doctoror.rxcursorloader;
 
+import android.content.ContentProviderClient;
 import android.content.ContentResolver;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DataSetObserver;
+import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.DeadObjectException;
 import android.os.Parcel;
+import android.os.RemoteException;
 import android.provider.MediaStore;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.functions.Cancellable;
+import io.reactivex.functions.Function;
 import io.reactivex.observers.BaseTestConsumer;
 import io.reactivex.observers.TestObserver;
 import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
 import io.reactivex.subscribers.TestSubscriber;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -51,16 +96,35 @@ public final class RxCursorLoaderTest {
     private static final Uri URI = new Uri.Builder().scheme("content")
             .authority("com.doctoror.rxcursorloader.test.provider").build();
 
+    private static final RowMapper<String> ARTIST_MAPPER = new RowMapper<String>() {
+
+        @NonNull
+        @Override
+        public String map(@NonNull final Cursor cursor) {
+            return cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Audio.Artists.ARTIST));
+        }
+    };
+
     private final ContentResolver contentResolver = mock(ContentResolver.class);
 
+    private final Cursor stubCursor = mock(Cursor.class);
+
     @Before
     public void setup() {
-        final Cursor stubCursor = mock(Cursor.class);
-        when(contentResolver
-                .query(eq(URI), (String[]) any(), (String) any(), (String[]) any(), (String) any()))
+        when(anyQuery(contentResolver))
                 .thenReturn(stubCursor);
     }
 
+    @After
+    public void resetMetricsListener() {
+        RxCursorLoader.setMetricsListener(null);
+    }
+
+    @After
+    public void resetUnhonoringAuthorities() {
+        QueryArgs.resetUnhonoringAuthorities();
+    }
+
     private void assertHasValidOpenCursor(@NonNull final BaseTestConsumer observer) {
         observer.assertValueCount(1);
         assertValidOpenCursor((Cursor) observer.values().get(0));
@@ -71,12 +135,70 @@ public final class RxCursorLoaderTest {
         verify(c, never()).close();
     }
 
+    @Nullable
+    private static Cursor anyQuery(@NonNull final ContentResolver resolver) {
+        return resolver.query(eq(URI), (String[]) any(), (String) any(), (String[]) any(),
+                (String) any(), (CancellationSignal) any());
+    }
+
+    @Nullable
+    private static Cursor anyClientQuery(@NonNull final ContentProviderClient client)
+            throws RemoteException {
+        return client.query(eq(URI), (String[]) any(), (String) any(), (String[]) any(),
+                (String) any(), (CancellationSignal) any());
+    }
+
     private void givenQueryReturnsNull() {
-        when(contentResolver
-                .query(eq(URI), (String[]) any(), (String) any(), (String[]) any(), (String) any()))
+        when(anyQuery(contentResolver))
                 .thenReturn(null);
     }
 
+    /**
+     * A source that ignores requests and cancel, like a shared loader that is still querying
+     */
+    @NonNull
+    private static Flowable<Cursor> requestIgnoringSource(
+            @NonNull final AtomicReference<Subscriber<? super Cursor>> upstream) {
+        return Flowable.unsafeCreate(new Publisher<Cursor>() {
+
+            @Override
+            public void subscribe(final Subscriber<? super Cursor> s) {
+                s.onSubscribe(new Subscription() {
+
+                    @Override
+                    public void request(final long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                upstream.set(s);
+            }
+        });
+    }
+
+    @NonNull
+    private ContentObserver captureContentObserver() {
+        final ArgumentCaptor<ContentObserver> captor = ArgumentCaptor
+                .forClass(ContentObserver.class);
+        verify(contentResolver).registerContentObserver(eq(URI), anyBoolean(), captor.capture());
+        return captor.getValue();
+    }
+
+    @NonNull
+    private MatrixCursor givenQueryReturnsArtists() {
+        final MatrixCursor cursor = new MatrixCursor(new String[]{
+                MediaStore.Audio.Artists._ID,
+                MediaStore.Audio.Artists.ARTIST
+        });
+        cursor.addRow(new Object[]{1L, "Oh Long Johnson"});
+        cursor.addRow(new Object[]{2L, "Oh Don Piano"});
+        when(anyQuery(contentResolver))
+                .thenReturn(cursor);
+        return cursor;
+    }
+
     @NonNull
     private RxCursorLoader.Query buildQuery() {
         return new RxCursorLoader.Query.Builder()
@@ -115,6 +237,26 @@ public final class RxCursorLoaderTest {
                 .setSortOrder(MediaStore.Audio.Artists.ARTIST)
                 .setSelection(MediaStore.Audio.Artists.ARTIST + "=?")
                 .setSelectionArgs(new String[]{"Oh Long Johnson"})
+                .setNotifyForDescendants(false)
+                .create();
+
+        final Parcel parcel = Parcel.obtain();
+        query.writeToParcel(parcel, 0);
+
+        parcel.setDataPosition(0);
+
+        final RxCursorLoader.Query fromParcel = RxCursorLoader.Query.CREATOR
+                .createFromParcel(parcel);
+        assertEquals(query, fromParcel);
+    }
+
+    @Test
+    public void queryArgsAreValidParcelable() {
+        final RxCursorLoader.Query query = new RxCursorLoader.Query.Builder()
+                .setContentUri(URI)
+                .setSortColumns(new String[]{MediaStore.Audio.Artists.ARTIST}, true)
+                .setLimit(10)
+                .setOffset(20)
                 .create();
 
         final Parcel parcel = Parcel.obtain();
@@ -125,6 +267,95 @@ public final class RxCursorLoaderTest {
         final RxCursorLoader.Query fromParcel = RxCursorLoader.Query.CREATOR
                 .createFromParcel(parcel);
         assertEquals(query, fromParcel);
+        assertEquals(query.hashCode(), fromParcel.hashCode());
+    }
+
+    @Test
+    public void queriesWithDifferentLimitsAreNotEqual() {
+        final RxCursorLoader.Query.Builder builder = new RxCursorLoader.Query.Builder()
+                .setContentUri(URI)
+                .setSortOrder(MediaStore.Audio.Artists.ARTIST)
+                .setLimit(10);
+
+        final RxCursorLoader.Query first = builder.create();
+        final RxCursorLoader.Query second = builder.setLimit(20).create();
+        assertFalse(first.equals(second));
+        assertFalse(first.hashCode() == second.hashCode());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void limitWithoutSortOrderThrowsIllegalStateException() {
+        new RxCursorLoader.Query.Builder()
+                .setContentUri(URI)
+                .setLimit(10)
+                .create();
+    }
+
+    @Test
+    @Config(sdk = Build.VERSION_CODES.N_MR1)
+    public void queryArgsAreEncodedIntoSortOrderBeforeApi26() {
+        givenQueryReturnsArtists();
+
+        RxCursorLoader.single(contentResolver, new RxCursorLoader.Query.Builder()
+                .setContentUri(URI)
+                .setSortColumns(new String[]{MediaStore.Audio.Artists.ARTIST}, true)
+                .setLimit(10)
+                .setOffset(20)
+                .create())
+                .test()
+                .assertValueCount(1);
+
+        verify(contentResolver).query(eq(URI), (String[]) any(), (String) any(),
+                (String[]) any(), eq(MediaStore.Audio.Artists.ARTIST + " DESC LIMIT 10 OFFSET 20"),
+                (CancellationSignal) any());
+    }
+
+    @Test
+    @Config(sdk = Build.VERSION_CODES.O)
+    public void queryArgsArePassedAsBundle() {
+        final ArgumentCaptor<Bundle> args = ArgumentCaptor.forClass(Bundle.class);
+        final Cursor unhonored = artistsCursor(
+                new Object[]{1L, "Oh Long Johnson"},
+                new Object[]{2L, "Oh Don Piano"},
+                new Object[]{3L, "Oh Danny Boy"});
+        when(contentResolver.query(eq(URI), (String[]) any(), args.capture(),
+                (CancellationSignal) any()))
+                .thenReturn(unhonored);
+
+        final String legacySortOrder = MediaStore.Audio.Artists.ARTIST + " ASC LIMIT 1 OFFSET 1";
+        when(contentResolver.query(eq(URI), (String[]) any(), (String) any(),
+                (String[]) any(), eq(legacySortOrder), (CancellationSignal) any()))
+                .thenReturn(
+                        artistsCursor(new Object[]{2L, "Oh Don Piano"}),
+                        artistsCursor(new Object[]{2L, "Oh Don Piano"}));
+
+        final RxCursorLoader.Query query = new RxCursorLoader.Query.Builder()
+                .setContentUri(URI)
+                .setSortColumns(new String[]{MediaStore.Audio.Artists.ARTIST}, false)
+                .setLimit(1)
+                .setOffset(1)
+                .create();
+
+        final TestObserver<List<String>> observer = RxCursorLoader.single(
+                contentResolver, query, ARTIST_MAPPER).test();
+
+        assertArrayEquals(new String[]{MediaStore.Audio.Artists.ARTIST},
+                args.getValue().getStringArray(ContentResolver.QUERY_ARG_SORT_COLUMNS));
+        assertEquals(ContentResolver.QUERY_SORT_DIRECTION_ASCENDING,
+                args.getValue().getInt(ContentResolver.QUERY_ARG_SORT_DIRECTION));
+        assertEquals(1, args.getValue().getInt(ContentResolver.QUERY_ARG_LIMIT));
+        assertEquals(1, args.getValue().getInt(ContentResolver.QUERY_ARG_OFFSET));
+
+        // The provider did not report the limit and offset as honored, so the query ran again
+        // with them encoded into the sort order
+        assertTrue(unhonored.isClosed());
+        observer.assertValue(Collections.singletonList("Oh Don Piano"));
+
+        // The authority is no longer queried with a Bundle
+        RxCursorLoader.single(contentResolver, query, ARTIST_MAPPER).test()
+                .assertValue(Collections.singletonList("Oh Don Piano"));
+        verify(contentResolver, times(1)).query(eq(URI), (String[]) any(), (Bundle) any(),
+                (CancellationSignal) any());
     }
 
     @Test
@@ -165,6 +396,284 @@ public final class RxCursorLoaderTest {
         observer.dispose();
     }
 
+    @Test
+    public void debounceMergesBurstOfNotificationsIntoSingleReload() {
+        final TestScheduler scheduler = new TestScheduler();
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setDebounce(100, TimeUnit.MILLISECONDS)
+                .create();
+
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                scheduler,
+                BackpressureStrategy.BUFFER,
+                options).test();
+
+        scheduler.triggerActions();
+        observer.assertValueCount(1);
+
+        final ContentObserver contentObserver = captureContentObserver();
+        for (int i = 0; i < 1000; i++) {
+            contentObserver.onChange(false);
+            scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        }
+        observer.assertValueCount(1);
+
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        observer.assertValueCount(2);
+
+        observer.dispose();
+    }
+
+    @Test
+    public void debounceMaxWaitReloadsDuringSteadyStreamOfNotifications() {
+        final TestScheduler scheduler = new TestScheduler();
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setDebounce(100, TimeUnit.MILLISECONDS)
+                .setDebounceMaxWait(250, TimeUnit.MILLISECONDS)
+                .create();
+
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                scheduler,
+                BackpressureStrategy.BUFFER,
+                options).test();
+
+        scheduler.triggerActions();
+
+        final ContentObserver contentObserver = captureContentObserver();
+        for (int i = 0; i < 1000; i++) {
+            contentObserver.onChange(false);
+            scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        }
+        observer.assertValueCount(5);
+
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        observer.assertValueCount(5);
+
+        observer.dispose();
+    }
+
+    @Test
+    public void notificationStormDuringQueryCoalescesIntoSingleRequery() {
+        final int notificationCount = 100;
+        final AtomicReference<ContentObserver> contentObserver = new AtomicReference<>();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                contentObserver.set((ContentObserver) invocation.getArgument(2));
+                return null;
+            }
+        }).when(contentResolver)
+                .registerContentObserver(eq(URI), anyBoolean(), any(ContentObserver.class));
+
+        when(anyQuery(contentResolver))
+                .thenAnswer(new Answer<Cursor>() {
+
+                    private boolean mFirstQuery = true;
+
+                    @Override
+                    public Cursor answer(final InvocationOnMock invocation) {
+                        if (mFirstQuery) {
+                            mFirstQuery = false;
+                            // Simulate notifications that arrive while the query is running
+                            for (int i = 0; i < notificationCount; i++) {
+                                contentObserver.get().onChange(false);
+                            }
+                        }
+                        return stubCursor;
+                    }
+                });
+
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER).test();
+
+        // Without coalescing this would be notificationCount + 1 queries
+        anyQuery(verify(contentResolver, times(2)));
+
+        // The first result was replaced by the requery
+        observer.assertValueCount(1);
+        verify(stubCursor).close();
+
+        observer.dispose();
+    }
+
+    @Test
+    public void sharedLoaderRunsOneQueryForEqualQueries() {
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setShared(true)
+                .create();
+
+        final TestSubscriber<Cursor> first = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER,
+                options).test();
+
+        final TestSubscriber<Cursor> second = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER,
+                options).test();
+
+        anyQuery(verify(contentResolver, times(1)));
+        verify(contentResolver, times(1))
+                .registerContentObserver(eq(URI), anyBoolean(), any(ContentObserver.class));
+
+        first.assertValueCount(1);
+        second.assertValueCount(1);
+        final Cursor firstCursor = first.values().get(0);
+        final Cursor secondCursor = second.values().get(0);
+        assertNotSame(firstCursor, secondCursor);
+
+        first.dispose();
+        second.dispose();
+        assertEquals(0, RxCursorLoaderSharedFactory.getLiveLoaderCount());
+
+        firstCursor.close();
+        assertFalse(secondCursor.isClosed());
+        verify(stubCursor, never()).close();
+
+        secondCursor.close();
+        verify(stubCursor).close();
+    }
+
+    @Test
+    public void sharedLoaderIsReusedWithinGracePeriod() {
+        final TestScheduler scheduler = new TestScheduler();
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setShared(true)
+                .setShareGracePeriod(1, TimeUnit.SECONDS)
+                .create();
+
+        final TestSubscriber<Cursor> first = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                scheduler,
+                BackpressureStrategy.BUFFER,
+                options).test();
+
+        scheduler.triggerActions();
+        first.assertValueCount(1);
+        first.dispose();
+
+        scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+        assertEquals(1, RxCursorLoaderSharedFactory.getLiveLoaderCount());
+
+        final TestSubscriber<Cursor> second = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                scheduler,
+                BackpressureStrategy.BUFFER,
+                options).test();
+
+        scheduler.triggerActions();
+        second.assertValueCount(1);
+        anyQuery(verify(contentResolver, times(1)));
+
+        second.dispose();
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertEquals(0, RxCursorLoaderSharedFactory.getLiveLoaderCount());
+
+        first.values().get(0).close();
+        second.values().get(0).close();
+        verify(stubCursor).close();
+    }
+
+    @Test
+    public void sharedLoaderTearsDownOutsideOfLock() throws Exception {
+        final AtomicBoolean lockFree = new AtomicBoolean();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Exception {
+                // Blocks if the teardown holds the lock of all shared loaders
+                final Thread other = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        RxCursorLoaderSharedFactory.getLiveLoaderCount();
+                        lockFree.set(true);
+                    }
+                });
+                other.start();
+                other.join(TimeUnit.SECONDS.toMillis(5));
+                return null;
+            }
+        }).when(contentResolver).unregisterContentObserver(any(ContentObserver.class));
+
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setShared(true)
+                .create();
+
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER,
+                options).test();
+        observer.dispose();
+
+        verify(contentResolver).unregisterContentObserver(any(ContentObserver.class));
+        assertTrue(lockFree.get());
+        observer.values().get(0).close();
+        verify(stubCursor).close();
+    }
+
+    @Test
+    public void sharedLoaderClosesHandlesDroppedByBackpressure() {
+        final Cursor first = mock(Cursor.class);
+        final Cursor second = mock(Cursor.class);
+        final Cursor third = mock(Cursor.class);
+        when(anyQuery(contentResolver)).thenReturn(first, second, third);
+
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setShared(true)
+                .create();
+
+        final TestSubscriber<Cursor> slow = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.LATEST,
+                options).test(1);
+
+        final TestSubscriber<Cursor> fast = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.LATEST,
+                options).test();
+
+        final ContentObserver contentObserver = captureContentObserver();
+        contentObserver.onChange(false);
+
+        // The slow subscriber has its second handle buffered, which the third one replaces
+        contentObserver.onChange(false);
+
+        slow.assertValueCount(1);
+        fast.assertValueCount(3);
+
+        slow.dispose();
+        fast.dispose();
+        slow.values().get(0).close();
+        for (final Cursor handle : fast.values()) {
+            handle.close();
+        }
+
+        verify(first).close();
+        verify(second).close();
+        verify(third).close();
+    }
+
     @Test
     public void singleReturnsCursorFromContentProvider() {
         final RxCursorLoader.Query query = new RxCursorLoader.Query.Builder()
@@ -192,4 +701,1224 @@ public final class RxCursorLoaderTest {
 
         observer.dispose();
     }
+
+    @Test
+    public void flowableMapsRowsAndClosesCursor() {
+        final MatrixCursor cursor = givenQueryReturnsArtists();
+
+        final TestSubscriber<List<String>> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.ERROR,
+                ARTIST_MAPPER).test();
+
+        observer.assertNoErrors();
+        observer.assertValue(Arrays.asList("Oh Long Johnson", "Oh Don Piano"));
+        assertTrue(cursor.isClosed());
+
+        observer.dispose();
+    }
+
+    @Test
+    public void singleMapsRowsAndClosesCursor() {
+        final MatrixCursor cursor = givenQueryReturnsArtists();
+
+        final TestObserver<List<String>> observer = RxCursorLoader
+                .single(contentResolver, buildQuery(), ARTIST_MAPPER).test();
+
+        observer.assertNoErrors();
+        observer.assertValue(Arrays.asList("Oh Long Johnson", "Oh Don Piano"));
+        assertTrue(cursor.isClosed());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void mappedSnapshotIsImmutable() {
+        givenQueryReturnsArtists();
+
+        RxCursorLoader.single(contentResolver, buildQuery(), ARTIST_MAPPER)
+                .blockingGet()
+                .clear();
+    }
+
+    @Test
+    public void diffFlowableEmitsChangeSetBetweenReloads() {
+        final MatrixCursor first = new MatrixCursor(new String[]{
+                MediaStore.Audio.Artists._ID,
+                MediaStore.Audio.Artists.ARTIST
+        });
+        first.addRow(new Object[]{1L, "Oh Long Johnson"});
+        first.addRow(new Object[]{2L, "Oh Don Piano"});
+
+        final MatrixCursor second = new MatrixCursor(new String[]{
+                MediaStore.Audio.Artists._ID,
+                MediaStore.Audio.Artists.ARTIST
+        });
+        second.addRow(new Object[]{2L, "Oh Don Piano"});
+        second.addRow(new Object[]{3L, "Why I Eyes Ya"});
+
+        when(anyQuery(contentResolver))
+                .thenReturn(first, second);
+
+        final TestSubscriber<SnapshotDiff<String>> observer = RxCursorLoader.diffFlowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                RxCursorLoader.Options.DEFAULT,
+                MediaStore.Audio.Artists._ID,
+                ARTIST_MAPPER).test();
+
+        captureContentObserver().onChange(false);
+
+        observer.assertValueCount(2);
+        assertTrue(first.isClosed());
+        assertTrue(second.isClosed());
+
+        final SnapshotDiff<String> diff = observer.values().get(1);
+        assertEquals(Arrays.asList("Oh Don Piano", "Why I Eyes Ya"), diff.getItems());
+        assertArrayEquals(new int[]{0}, diff.getChangeSet().getRemovedPositions());
+        assertArrayEquals(new int[]{1}, diff.getChangeSet().getInsertedPositions());
+
+        observer.dispose();
+    }
+
+    @Test
+    public void diffFlowableComputesChangeSetAgainstLastEmittedSnapshot() {
+        when(anyQuery(contentResolver)).thenReturn(
+                artistsCursor(new Object[]{1L, "Oh Long Johnson"}),
+                artistsCursor(
+                        new Object[]{1L, "Oh Long Johnson"},
+                        new Object[]{2L, "Oh Don Piano"}),
+                artistsCursor(
+                        new Object[]{1L, "Oh Long Johnson"},
+                        new Object[]{2L, "Oh Don Piano"},
+                        new Object[]{3L, "Why I Eyes Ya"}));
+
+        final AtomicReference<ContentObserver> contentObserver = new AtomicReference<>();
+        final RowMapper<String> mapper = new RowMapper<String>() {
+
+            @NonNull
+            @Override
+            public String map(@NonNull final Cursor cursor) {
+                if (cursor.getCount() == 2 && cursor.isLast()) {
+                    // Supersedes the second reload while it is converted
+                    contentObserver.get().onChange(false);
+                }
+                return ARTIST_MAPPER.map(cursor);
+            }
+        };
+
+        final TestSubscriber<SnapshotDiff<String>> observer = RxCursorLoader.diffFlowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                RxCursorLoader.Options.DEFAULT,
+                MediaStore.Audio.Artists._ID,
+                mapper).test();
+
+        contentObserver.set(captureContentObserver());
+        contentObserver.get().onChange(false);
+
+        // The second snapshot was discarded
+        observer.assertValueCount(2);
+        final SnapshotDiff<String> diff = observer.values().get(1);
+        assertEquals(3, diff.getItems().size());
+        assertArrayEquals(new int[]{1, 2}, diff.getChangeSet().getInsertedPositions());
+
+        observer.dispose();
+    }
+
+    @NonNull
+    private static MatrixCursor artistsCursor(@NonNull final Object[]... rows) {
+        final MatrixCursor cursor = new MatrixCursor(new String[]{
+                MediaStore.Audio.Artists._ID,
+                MediaStore.Audio.Artists.ARTIST
+        });
+        for (final Object[] row : rows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    @NonNull
+    private static RxCursorLoader.Paging buildArtistPaging() {
+        return new RxCursorLoader.Paging.Builder()
+                .setPageSize(2)
+                .setSortColumn(MediaStore.Audio.Artists.ARTIST, false)
+                .create();
+    }
+
+    @Test
+    public void pagedLoadsNextPageOnRequest() {
+        when(anyQuery(contentResolver))
+                .thenReturn(
+                        artistsCursor(
+                                new Object[]{1L, "Oh Don Piano"},
+                                new Object[]{2L, "Oh Long Johnson"}),
+                        artistsCursor(
+                                new Object[]{3L, "Why I Eyes Ya"}));
+
+        final TestSubscriber<List<String>> observer = RxCursorLoader.paged(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                buildArtistPaging(),
+                ARTIST_MAPPER).test(0);
+
+        observer.assertNoValues();
+        anyQuery(verify(contentResolver, never()));
+
+        observer.request(1);
+        observer.assertValue(Arrays.asList("Oh Don Piano", "Oh Long Johnson"));
+        verify(contentResolver).query(eq(URI), (String[]) isNull(), (String) isNull(),
+                (String[]) isNull(), eq("artist ASC, _id ASC LIMIT 2"),
+                (CancellationSignal) any());
+
+        observer.request(1);
+        observer.assertValueCount(2);
+        assertEquals(Arrays.asList("Oh Don Piano", "Oh Long Johnson", "Why I Eyes Ya"),
+                observer.values().get(1));
+        verify(contentResolver).query(eq(URI), (String[]) isNull(),
+                eq("(artist > ? OR (artist = ? AND _id > ?))"),
+                aryEq(new String[]{"Oh Long Johnson", "Oh Long Johnson", "2"}),
+                eq("artist ASC, _id ASC LIMIT 2"),
+                (CancellationSignal) any());
+
+        // Exhausted, nothing to load
+        observer.request(1);
+        observer.assertValueCount(2);
+
+        observer.dispose();
+    }
+
+    @Test
+    public void pagedDefersRefreshUntilRequested() {
+        when(anyQuery(contentResolver))
+                .thenReturn(
+                        artistsCursor(
+                                new Object[]{1L, "Oh Don Piano"},
+                                new Object[]{2L, "Oh Long Johnson"}),
+                        artistsCursor(
+                                new Object[]{2L, "Oh Long Johnson"}));
+
+        final TestSubscriber<List<String>> observer = RxCursorLoader.paged(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                buildArtistPaging(),
+                ARTIST_MAPPER).test(1);
+
+        observer.assertValueCount(1);
+
+        captureContentObserver().onChange(false);
+        anyQuery(verify(contentResolver, times(1)));
+
+        observer.request(1);
+        observer.assertValueCount(2);
+        assertEquals(Collections.singletonList("Oh Long Johnson"), observer.values().get(1));
+        verify(contentResolver).query(eq(URI), (String[]) isNull(),
+                eq("(artist < ? OR (artist = ? AND _id <= ?))"),
+                aryEq(new String[]{"Oh Long Johnson", "Oh Long Johnson", "2"}),
+                eq("artist ASC, _id ASC"),
+                (CancellationSignal) any());
+
+        observer.dispose();
+    }
+
+    @Test
+    public void pagedLoadsFirstPageAfterInsertIntoEmptyTable() {
+        when(anyQuery(contentResolver))
+                .thenReturn(
+                        artistsCursor(),
+                        artistsCursor(new Object[]{1L, "Oh Don Piano"}));
+
+        final TestSubscriber<List<String>> observer = RxCursorLoader.paged(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                buildArtistPaging(),
+                ARTIST_MAPPER).test();
+
+        observer.assertValue(Collections.<String>emptyList());
+
+        captureContentObserver().onChange(false);
+
+        observer.assertValueCount(2);
+        assertEquals(Collections.singletonList("Oh Don Piano"), observer.values().get(1));
+
+        observer.dispose();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pagedThrowsIfQueryHasSortOrder() {
+        RxCursorLoader.paged(
+                contentResolver,
+                new RxCursorLoader.Query.Builder()
+                        .setContentUri(URI)
+                        .setSortOrder("artist")
+                        .create(),
+                Schedulers.trampoline(),
+                buildArtistPaging(),
+                ARTIST_MAPPER);
+    }
+
+    private static final Function<Row, String> ROW_ARTIST = new Function<Row, String>() {
+
+        @Override
+        public String apply(final Row row) {
+            return row.getString(row.getColumnIndexOrThrow(MediaStore.Audio.Artists.ARTIST));
+        }
+    };
+
+    @Test
+    public void rowsMovesCursorOnRequest() {
+        final MatrixCursor cursor = givenQueryReturnsArtists();
+
+        final TestSubscriber<String> observer = RxCursorLoader
+                .rows(contentResolver, buildQuery())
+                .map(ROW_ARTIST)
+                .test(0);
+
+        observer.assertNoValues();
+
+        observer.request(1);
+        observer.assertValue("Oh Long Johnson");
+        assertEquals(0, cursor.getPosition());
+        assertFalse(cursor.isClosed());
+
+        observer.request(1);
+        observer.assertValues("Oh Long Johnson", "Oh Don Piano");
+        observer.assertNotComplete();
+
+        observer.request(1);
+        observer.assertComplete();
+        assertTrue(cursor.isClosed());
+    }
+
+    @Test
+    public void rowsClosesCursorOnCancel() {
+        final MatrixCursor cursor = givenQueryReturnsArtists();
+
+        final TestSubscriber<Row> observer = RxCursorLoader
+                .rows(contentResolver, buildQuery())
+                .test(1);
+
+        observer.assertValueCount(1);
+        observer.cancel();
+
+        assertTrue(cursor.isClosed());
+    }
+
+    @Test
+    public void rowsReusesRow() {
+        givenQueryReturnsArtists();
+
+        final TestSubscriber<Row> observer = RxCursorLoader
+                .rows(contentResolver, buildQuery())
+                .test();
+
+        observer.assertValueCount(2);
+        assertSame(observer.values().get(0), observer.values().get(1));
+    }
+
+    @Test
+    public void rowsErrorsWhenQueryReturnsNull() {
+        givenQueryReturnsNull();
+
+        RxCursorLoader
+                .rows(contentResolver, buildQuery())
+                .test()
+                .assertError(QueryReturnedNullException.class);
+    }
+
+    @Test
+    public void flowableObservesDescendantsAsQueryRequests() {
+        final RxCursorLoader.Query query = new RxCursorLoader.Query.Builder()
+                .setContentUri(URI)
+                .setNotifyForDescendants(false)
+                .create();
+
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                query,
+                Schedulers.trampoline(),
+                BackpressureStrategy.LATEST).test();
+
+        verify(contentResolver).registerContentObserver(eq(URI), eq(false),
+                any(ContentObserver.class));
+
+        observer.dispose();
+    }
+
+    @Test
+    public void flowableDropsNotificationsRejectedByFilter() {
+        final LoaderStats stats = new LoaderStats();
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setNotificationFilter(new NotificationFilter() {
+
+                    @Override
+                    public boolean accept(@NonNull final Uri uri) {
+                        return URI.equals(uri);
+                    }
+                })
+                .setStats(stats)
+                .create();
+
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.LATEST,
+                options).test();
+
+        final ContentObserver contentObserver = captureContentObserver();
+        contentObserver.onChange(false, URI.buildUpon().appendPath("1").build());
+
+        anyQuery(verify(contentResolver, times(1)));
+        assertEquals(1, stats.getDroppedNotificationCount());
+        assertEquals(0, stats.getAcceptedNotificationCount());
+
+        contentObserver.onChange(false, URI);
+
+        anyQuery(verify(contentResolver, times(2)));
+        assertEquals(1, stats.getAcceptedNotificationCount());
+
+        observer.dispose();
+    }
+
+    @Test
+    public void singleWarmsCursorBeforeEmitting() {
+        final LoaderStats stats = new LoaderStats();
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setWarm(true)
+                .setStats(stats)
+                .create();
+
+        RxCursorLoader.single(contentResolver, buildQuery(), options)
+                .test()
+                .assertValue(stubCursor);
+
+        verify(stubCursor).getCount();
+        verify(stubCursor, never()).moveToFirst();
+        assertEquals(1, stats.getWarmCount());
+    }
+
+    @Test
+    public void flowableWarmsCursorBeforeEmitting() {
+        final LoaderStats stats = new LoaderStats();
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setWarm(true)
+                .setStats(stats)
+                .create();
+
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.LATEST,
+                options).test();
+
+        observer.assertValue(stubCursor);
+        verify(stubCursor).getCount();
+        assertEquals(1, stats.getWarmCount());
+
+        observer.dispose();
+    }
+
+    @Test
+    public void singleDoesNotWarmByDefault() {
+        RxCursorLoader.single(contentResolver, buildQuery(), RxCursorLoader.Options.DEFAULT)
+                .test()
+                .assertValue(stubCursor);
+
+        verify(stubCursor, never()).getCount();
+    }
+
+    @Test
+    public void flowableCancelsQueryOnDispose() {
+        final AtomicReference<TestSubscriber<Cursor>> observer = new AtomicReference<>();
+        final AtomicReference<CancellationSignal> signal = new AtomicReference<>();
+        when(anyQuery(contentResolver))
+                .thenAnswer(new Answer<Cursor>() {
+
+                    @Override
+                    public Cursor answer(final InvocationOnMock invocation) {
+                        signal.set((CancellationSignal) invocation.getArgument(5));
+                        // Simulate dispose while the query is running
+                        observer.get().dispose();
+                        return stubCursor;
+                    }
+                });
+
+        observer.set(new TestSubscriber<Cursor>());
+        RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER).subscribe(observer.get());
+
+        assertTrue(signal.get().isCanceled());
+        observer.get().assertNoValues();
+        verify(stubCursor).close();
+    }
+
+    @Test
+    public void flowableReleasesObserverAndThreadOnEveryDispose() {
+        final Set<ContentObserver> registered = Collections.newSetFromMap(
+                new ConcurrentHashMap<ContentObserver, Boolean>());
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                registered.add((ContentObserver) invocation.getArgument(2));
+                return null;
+            }
+        }).when(contentResolver).registerContentObserver(
+                eq(URI), anyBoolean(), (ContentObserver) any());
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                registered.remove((ContentObserver) invocation.getArgument(0));
+                return null;
+            }
+        }).when(contentResolver).unregisterContentObserver((ContentObserver) any());
+
+        final int threadCount = RxCursorLoader.getLiveObserverThreadCount();
+        for (int i = 0; i < 10000; i++) {
+            final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                    contentResolver,
+                    buildQuery(),
+                    Schedulers.trampoline(),
+                    BackpressureStrategy.LATEST).test();
+
+            assertHasValidOpenCursor(observer);
+            assertEquals(1, registered.size());
+
+            observer.dispose();
+            observer.assertNotTerminated();
+            assertTrue(registered.isEmpty());
+            assertEquals(threadCount, RxCursorLoader.getLiveObserverThreadCount());
+        }
+    }
+
+    @Test
+    public void directNotificationsReloadWithoutObserverThread() {
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setDirectNotifications(true)
+                .create();
+
+        final int threadCount = RxCursorLoader.getLiveObserverThreadCount();
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER,
+                options).test();
+
+        observer.assertValueCount(1);
+        assertEquals(threadCount, RxCursorLoader.getLiveObserverThreadCount());
+
+        // Without a Handler, dispatch calls onChange on the calling thread
+        captureContentObserver().dispatchChange(false, URI);
+        observer.assertValueCount(2);
+
+        observer.dispose();
+    }
+
+    @Test(timeout = 10000)
+    public void flowableDisposeDoesNotWaitForRunningQuery() throws Exception {
+        final CountDownLatch queryStarted = new CountDownLatch(1);
+        final CountDownLatch queryFinish = new CountDownLatch(1);
+        when(anyQuery(contentResolver))
+                .thenAnswer(new Answer<Cursor>() {
+
+                    @Override
+                    public Cursor answer(final InvocationOnMock invocation) throws Exception {
+                        queryStarted.countDown();
+                        queryFinish.await();
+                        return stubCursor;
+                    }
+                });
+
+        final CountDownLatch cursorClosed = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                cursorClosed.countDown();
+                return null;
+            }
+        }).when(stubCursor).close();
+
+        // Unlike Schedulers.newThread(), does not interrupt the query on dispose
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                    contentResolver,
+                    buildQuery(),
+                    Schedulers.from(executor),
+                    BackpressureStrategy.BUFFER).test();
+            queryStarted.await();
+
+            // Returns while the query is still blocked
+            observer.dispose();
+            verify(contentResolver).unregisterContentObserver((ContentObserver) any());
+
+            queryFinish.countDown();
+            cursorClosed.await();
+            observer.assertNoValues();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void flowableCancelsQueryReplacedByNewerReload() {
+        final AtomicReference<ContentObserver> contentObserver = new AtomicReference<>();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                contentObserver.set((ContentObserver) invocation.getArgument(2));
+                return null;
+            }
+        }).when(contentResolver)
+                .registerContentObserver(eq(URI), anyBoolean(), any(ContentObserver.class));
+
+        final Cursor replaced = mock(Cursor.class);
+        final List<CancellationSignal> signals = new ArrayList<>();
+        when(anyQuery(contentResolver))
+                .thenAnswer(new Answer<Cursor>() {
+
+                    @Override
+                    public Cursor answer(final InvocationOnMock invocation) {
+                        signals.add((CancellationSignal) invocation.getArgument(5));
+                        if (signals.size() == 1) {
+                            contentObserver.get().onChange(false);
+                            return replaced;
+                        }
+                        if (signals.size() == 2) {
+                            // Not cancelled twice in a row
+                            contentObserver.get().onChange(false);
+                        }
+                        return stubCursor;
+                    }
+                });
+
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER).test();
+
+        assertEquals(3, signals.size());
+        assertTrue(signals.get(0).isCanceled());
+        assertFalse(signals.get(1).isCanceled());
+        verify(replaced).close();
+        observer.assertValues(stubCursor, stubCursor);
+
+        observer.dispose();
+    }
+
+    @Test
+    public void singleCancelsQueryOnDispose() {
+        final AtomicReference<TestObserver<Cursor>> observer = new AtomicReference<>();
+        final AtomicReference<CancellationSignal> signal = new AtomicReference<>();
+        when(anyQuery(contentResolver))
+                .thenAnswer(new Answer<Cursor>() {
+
+                    @Override
+                    public Cursor answer(final InvocationOnMock invocation) {
+                        signal.set((CancellationSignal) invocation.getArgument(5));
+                        observer.get().dispose();
+                        return stubCursor;
+                    }
+                });
+
+        observer.set(new TestObserver<Cursor>());
+        RxCursorLoader.single(contentResolver, buildQuery()).subscribe(observer.get());
+
+        assertTrue(signal.get().isCanceled());
+        observer.get().assertNoValues();
+        verify(stubCursor).close();
+    }
+
+    @Test
+    public void singleFlightSharesQueryBetweenConcurrentSubscriptions() {
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setSingleFlight(true)
+                .create();
+
+        final TestObserver<Cursor> second = new TestObserver<>();
+        when(anyQuery(contentResolver))
+                .thenAnswer(new Answer<Cursor>() {
+
+                    @Override
+                    public Cursor answer(final InvocationOnMock invocation) {
+                        // Subscribes while the first query is in flight
+                        RxCursorLoader.single(contentResolver, buildQuery(), options)
+                                .subscribe(second);
+                        return stubCursor;
+                    }
+                });
+
+        final TestObserver<Cursor> first = RxCursorLoader
+                .single(contentResolver, buildQuery(), options)
+                .test();
+
+        anyQuery(verify(contentResolver, times(1)));
+        assertEquals(0, SingleFlight.getFlightCount());
+
+        first.assertValueCount(1);
+        second.assertValueCount(1);
+        final Cursor firstCursor = first.values().get(0);
+        final Cursor secondCursor = second.values().get(0);
+        assertNotSame(firstCursor, secondCursor);
+
+        firstCursor.close();
+        verify(stubCursor, never()).close();
+
+        secondCursor.close();
+        verify(stubCursor).close();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void sharedCursorHandleDoesNotChangeUnderlyingCursor() {
+        final RefCountedCursor shared = new RefCountedCursor(stubCursor);
+        final Cursor handle = shared.acquire();
+
+        handle.deactivate();
+        assertFalse(handle.requery());
+        handle.registerDataSetObserver(mock(DataSetObserver.class));
+
+        verify(stubCursor, never()).deactivate();
+        verify(stubCursor, never()).requery();
+        verify(stubCursor, never()).registerDataSetObserver(any(DataSetObserver.class));
+
+        handle.close();
+        shared.release();
+        verify(stubCursor).close();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void sharedCursorHandleDoesNotExposeUnderlyingCursor() {
+        ((CursorWrapper) new RefCountedCursor(stubCursor).acquire()).getWrappedCursor();
+    }
+
+    @Test
+    public void singleDeliveryDoesNotTakeItemAfterDispose() {
+        final TestObserver<Cursor> observer = new TestObserver<>();
+        final SingleDelivery<Cursor> delivery = new SingleDelivery<>(observer);
+        observer.onSubscribe(delivery);
+
+        final AtomicInteger cancelCount = new AtomicInteger();
+        delivery.setCancellable(new Cancellable() {
+
+            @Override
+            public void cancel() {
+                cancelCount.incrementAndGet();
+            }
+        });
+
+        observer.dispose();
+        assertEquals(1, cancelCount.get());
+
+        // The caller still owns the item and must close it
+        assertFalse(delivery.tryOnSuccess(stubCursor));
+        observer.assertNoValues();
+    }
+
+    @Test
+    public void singleClosesCursorDisposedWhileDelivering() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (int i = 0; i < 100; i++) {
+                final Cursor cursor = mock(Cursor.class);
+                final TestObserver<Cursor> observer = new TestObserver<>();
+                final CountDownLatch disposed = new CountDownLatch(1);
+                when(anyQuery(contentResolver)).thenAnswer(new Answer<Cursor>() {
+
+                    @Override
+                    public Cursor answer(final InvocationOnMock invocation) {
+                        // Races the dispose with the delivery
+                        executor.execute(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                observer.dispose();
+                                disposed.countDown();
+                            }
+                        });
+                        return cursor;
+                    }
+                });
+
+                RxCursorLoader.single(contentResolver, buildQuery()).subscribe(observer);
+                assertTrue(disposed.await(5, TimeUnit.SECONDS));
+
+                // Either the observer took the Cursor, or it was closed
+                verify(cursor, times(observer.valueCount() == 0 ? 1 : 0)).close();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void singleFlightCursorHandlesHaveIndependentPositions() {
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setSingleFlight(true)
+                .create();
+
+        final TestObserver<Cursor> second = new TestObserver<>();
+        when(anyQuery(contentResolver))
+                .thenAnswer(new Answer<Cursor>() {
+
+                    @Override
+                    public Cursor answer(final InvocationOnMock invocation) {
+                        RxCursorLoader.single(contentResolver, buildQuery(), options)
+                                .subscribe(second);
+                        return artistsCursor(
+                                new Object[]{1L, "Oh Long Johnson"},
+                                new Object[]{2L, "Oh Don Piano"});
+                    }
+                });
+
+        final Cursor firstCursor = RxCursorLoader
+                .single(contentResolver, buildQuery(), options)
+                .blockingGet();
+        final Cursor secondCursor = second.values().get(0);
+
+        assertTrue(firstCursor.moveToFirst());
+        assertTrue(secondCursor.moveToLast());
+        assertEquals("Oh Long Johnson", firstCursor.getString(1));
+        assertEquals("Oh Don Piano", secondCursor.getString(1));
+        assertEquals(0, firstCursor.getPosition());
+
+        assertTrue(firstCursor.moveToNext());
+        assertFalse(secondCursor.moveToNext());
+        assertTrue(secondCursor.isAfterLast());
+        assertEquals("Oh Don Piano", firstCursor.getString(1));
+
+        firstCursor.close();
+        secondCursor.close();
+    }
+
+    @Test
+    public void singleFlightSharesSnapshotAndQueriesAgainAfterDelivery() {
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setSingleFlight(true)
+                .create();
+
+        final TestObserver<List<String>> second = new TestObserver<>();
+        when(anyQuery(contentResolver))
+                .thenAnswer(new Answer<Cursor>() {
+
+                    @Override
+                    public Cursor answer(final InvocationOnMock invocation) {
+                        if (!second.hasSubscription()) {
+                            RxCursorLoader.single(
+                                    contentResolver, buildQuery(), options, ARTIST_MAPPER)
+                                    .subscribe(second);
+                        }
+                        return artistsCursor(new Object[]{1L, "Oh Long Johnson"});
+                    }
+                });
+
+        final TestObserver<List<String>> first = RxCursorLoader
+                .single(contentResolver, buildQuery(), options, ARTIST_MAPPER)
+                .test();
+
+        anyQuery(verify(contentResolver, times(1)));
+        first.assertValue(Collections.singletonList("Oh Long Johnson"));
+        second.assertValueCount(1);
+        assertSame(first.values().get(0), second.values().get(0));
+
+        RxCursorLoader.single(contentResolver, buildQuery(), options, ARTIST_MAPPER)
+                .test()
+                .assertValue(Collections.singletonList("Oh Long Johnson"));
+
+        anyQuery(verify(contentResolver, times(2)));
+        assertEquals(0, SingleFlight.getFlightCount());
+    }
+
+    @Test
+    public void reuseProviderClientQueriesThroughOneClientUntilDispose() throws Exception {
+        final ContentProviderClient client = mock(ContentProviderClient.class);
+        when(contentResolver.acquireUnstableContentProviderClient(URI.getAuthority()))
+                .thenReturn(client);
+        when(anyClientQuery(client)).thenReturn(stubCursor);
+
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setReuseProviderClient(true)
+                .create();
+
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER,
+                options).test();
+
+        captureContentObserver().onChange(false);
+        observer.assertValueCount(2);
+
+        anyClientQuery(verify(client, times(2)));
+        anyQuery(verify(contentResolver, never()));
+        verify(contentResolver, times(1))
+                .acquireUnstableContentProviderClient(URI.getAuthority());
+        verify(client, never()).release();
+
+        observer.dispose();
+        verify(client).release();
+        assertEquals(0, ProviderClients.getLiveClientCount());
+    }
+
+    @Test
+    public void reuseProviderClientDoesNotShareClientsBetweenResolvers() throws Exception {
+        final ContentProviderClient client = mock(ContentProviderClient.class);
+        when(contentResolver.acquireUnstableContentProviderClient(URI.getAuthority()))
+                .thenReturn(client);
+        when(anyClientQuery(client)).thenReturn(stubCursor);
+
+        final ContentResolver otherResolver = mock(ContentResolver.class);
+        final ContentProviderClient otherClient = mock(ContentProviderClient.class);
+        when(otherResolver.acquireUnstableContentProviderClient(URI.getAuthority()))
+                .thenReturn(otherClient);
+        when(anyClientQuery(otherClient)).thenReturn(mock(Cursor.class));
+
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setReuseProviderClient(true)
+                .create();
+
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER,
+                options).test();
+
+        final TestSubscriber<Cursor> otherObserver = RxCursorLoader.flowable(
+                otherResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER,
+                options).test();
+
+        anyClientQuery(verify(client, times(1)));
+        anyClientQuery(verify(otherClient, times(1)));
+        assertEquals(2, ProviderClients.getLiveClientCount());
+
+        observer.dispose();
+        otherObserver.dispose();
+        verify(client).release();
+        verify(otherClient).release();
+        assertEquals(0, ProviderClients.getLiveClientCount());
+    }
+
+    @Test
+    public void reuseProviderClientReacquiresClientWhenProviderDies() throws Exception {
+        final ContentProviderClient dead = mock(ContentProviderClient.class);
+        when(anyClientQuery(dead)).thenThrow(new DeadObjectException());
+
+        final ContentProviderClient client = mock(ContentProviderClient.class);
+        when(anyClientQuery(client)).thenReturn(stubCursor);
+
+        when(contentResolver.acquireUnstableContentProviderClient(URI.getAuthority()))
+                .thenReturn(dead, client);
+
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setReuseProviderClient(true)
+                .create();
+
+        RxCursorLoader.single(contentResolver, buildQuery(), options)
+                .test()
+                .assertValue(stubCursor);
+
+        verify(dead).release();
+        verify(client).release();
+        assertEquals(0, ProviderClients.getLiveClientCount());
+    }
+
+    @Test
+    public void closeReplacedCursorsClosesPreviousAfterNextIsConsumed() {
+        final Cursor first = mock(Cursor.class);
+        final Cursor second = mock(Cursor.class);
+        when(anyQuery(contentResolver)).thenReturn(first, second);
+
+        final TestScheduler consumer = new TestScheduler();
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER)
+                .compose(RxCursorLoader.closeReplacedCursors(consumer, Schedulers.trampoline()))
+                .test();
+
+        captureContentObserver().onChange(false);
+
+        // Both are loaded, but the subscriber has not consumed any of them yet
+        observer.assertNoValues();
+        verify(first, never()).close();
+
+        consumer.triggerActions();
+
+        observer.assertValues(first, second);
+        verify(first).close();
+        verify(second, never()).close();
+
+        observer.dispose();
+        verify(second).close();
+    }
+
+    @Test
+    public void closeReplacedCursorsClosesQueuedCursorsOnDispose() {
+        final Cursor first = mock(Cursor.class);
+        final Cursor second = mock(Cursor.class);
+
+        final TestScheduler consumer = new TestScheduler();
+        final TestSubscriber<Cursor> observer = Flowable.just(first, second)
+                .compose(RxCursorLoader.closeReplacedCursors(consumer, Schedulers.trampoline()))
+                .test();
+
+        // The first one waits to be delivered on the subscriber thread
+        observer.assertNoValues();
+
+        observer.dispose();
+        consumer.triggerActions();
+
+        observer.assertNoValues();
+        verify(first).close();
+        verify(second, never()).close();
+    }
+
+    @Test
+    public void metricsListenerReceivesQueryAndReloadMetrics() {
+        final MatrixCursor first = artistsCursor(
+                new Object[]{1L, "Oh Long Johnson"},
+                new Object[]{2L, "Oh Don Piano"});
+        final MatrixCursor second = artistsCursor(
+                new Object[]{1L, "Oh Long Johnson"});
+        when(anyQuery(contentResolver)).thenReturn(first, second);
+
+        final RecordingMetricsListener metrics = new RecordingMetricsListener();
+        RxCursorLoader.setMetricsListener(metrics);
+
+        final TestScheduler scheduler = new TestScheduler();
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                scheduler,
+                BackpressureStrategy.LATEST).test();
+
+        scheduler.triggerActions();
+        observer.assertValueCount(1);
+        assertEquals(1, metrics.queries.size());
+        assertEquals(2, metrics.queries.get(0).getRowCount());
+        assertTrue(metrics.queries.get(0).getEstimatedBytes() > 0);
+        assertTrue(metrics.coalescedCounts.isEmpty());
+
+        final ContentObserver contentObserver = captureContentObserver();
+        contentObserver.onChange(false);
+        contentObserver.onChange(false);
+        scheduler.triggerActions();
+
+        observer.assertValueCount(2);
+        assertEquals(2, metrics.queries.size());
+        assertEquals(1, metrics.queries.get(1).getRowCount());
+        assertEquals(Collections.singletonList(1), metrics.coalescedCounts);
+
+        observer.dispose();
+    }
+
+    @Test
+    public void maxBufferedCursorsQueriesOnlyWhenRequested() {
+        final RxCursorLoader.Options options = new RxCursorLoader.Options.Builder()
+                .setMaxBufferedCursors(2)
+                .create();
+
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.ERROR,
+                options).test(0);
+
+        // No demand, only marks the loader dirty
+        final ContentObserver contentObserver = captureContentObserver();
+        contentObserver.onChange(false);
+        contentObserver.onChange(false);
+        anyQuery(verify(contentResolver, never()));
+
+        observer.request(1);
+        observer.assertValues(stubCursor);
+        anyQuery(verify(contentResolver, times(1)));
+
+        observer.dispose();
+    }
+
+    @Test
+    public void maxBufferedCursorsClosesDroppedCursors() {
+        final AtomicReference<Subscriber<? super Cursor>> upstream = new AtomicReference<>();
+        final Flowable<Cursor> source = requestIgnoringSource(upstream);
+
+        final Cursor first = mock(Cursor.class);
+        final Cursor second = mock(Cursor.class);
+        final Cursor third = mock(Cursor.class);
+        final Cursor fourth = mock(Cursor.class);
+        final LoaderStats stats = new LoaderStats();
+        final TestSubscriber<Cursor> observer = source
+                .lift(new CursorBackpressureOperator(2, Schedulers.trampoline(), stats))
+                .test(0);
+
+        upstream.get().onNext(first);
+        upstream.get().onNext(second);
+        upstream.get().onNext(third);
+
+        // The oldest is dropped once a third Cursor arrives
+        observer.assertNoValues();
+        verify(first).close();
+        verify(second, never()).close();
+        assertEquals(1, stats.getDroppedCursorCount());
+
+        observer.request(1);
+        observer.assertValues(second);
+
+        upstream.get().onNext(fourth);
+        observer.dispose();
+        verify(second, never()).close();
+        verify(third).close();
+        verify(fourth).close();
+        assertEquals(1, stats.getDroppedCursorCount());
+    }
+
+    @Test
+    public void maxBufferedCursorsClosesCursorDeliveredAfterCancel() {
+        final AtomicReference<Subscriber<? super Cursor>> upstream = new AtomicReference<>();
+        final Flowable<Cursor> source = requestIgnoringSource(upstream);
+
+        final Cursor buffered = mock(Cursor.class);
+        final Cursor late = mock(Cursor.class);
+        final TestSubscriber<Cursor> observer = source
+                .lift(new CursorBackpressureOperator(1, Schedulers.trampoline(), null))
+                .test(0);
+
+        upstream.get().onNext(buffered);
+        observer.cancel();
+        verify(buffered).close();
+
+        upstream.get().onNext(late);
+        verify(late).close();
+        observer.assertNoValues();
+    }
+
+    @Test
+    public void maxBufferedCursorsSignalsInvalidRequest() {
+        final AtomicReference<Subscriber<? super Cursor>> upstream = new AtomicReference<>();
+        final Cursor buffered = mock(Cursor.class);
+        final TestSubscriber<Cursor> observer = requestIgnoringSource(upstream)
+                .lift(new CursorBackpressureOperator(1, Schedulers.trampoline(), null))
+                .test(0);
+        upstream.get().onNext(buffered);
+
+        observer.request(0);
+
+        observer.assertError(IllegalArgumentException.class);
+        observer.assertNoValues();
+        verify(buffered).close();
+    }
+
+    @Test
+    public void flowableQueriesOnlyWhenRequested() {
+        final TestSubscriber<Cursor> observer = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER).test(0);
+
+        verify(contentResolver, never()).query(eq(URI), (String[]) any(), (String) any(),
+                (String[]) any(), (String) any(), (CancellationSignal) any());
+
+        observer.request(1);
+        observer.assertValueCount(1);
+        verify(contentResolver, times(1)).query(eq(URI), (String[]) any(), (String) any(),
+                (String[]) any(), (String) any(), (CancellationSignal) any());
+
+        // No demand, only marks the loader dirty
+        final ContentObserver contentObserver = captureContentObserver();
+        contentObserver.onChange(false);
+        contentObserver.onChange(false);
+        contentObserver.onChange(false);
+        verify(contentResolver, times(1)).query(eq(URI), (String[]) any(), (String) any(),
+                (String[]) any(), (String) any(), (CancellationSignal) any());
+
+        observer.request(5);
+        observer.assertValueCount(2);
+        verify(contentResolver, times(2)).query(eq(URI), (String[]) any(), (String) any(),
+                (String[]) any(), (String) any(), (CancellationSignal) any());
+
+        observer.dispose();
+    }
+
+    @Test
+    public void flowableSubscriptionsDoNotShareState() {
+        final Flowable<Cursor> flowable = RxCursorLoader.flowable(
+                contentResolver,
+                buildQuery(),
+                Schedulers.trampoline(),
+                BackpressureStrategy.BUFFER);
+
+        final TestSubscriber<Cursor> first = flowable.test();
+        final TestSubscriber<Cursor> second = flowable.test();
+        first.assertValueCount(1);
+        second.assertValueCount(1);
+
+        final ArgumentCaptor<ContentObserver> captor = ArgumentCaptor
+                .forClass(ContentObserver.class);
+        verify(contentResolver, times(2))
+                .registerContentObserver(eq(URI), anyBoolean(), captor.capture());
+        final List<ContentObserver> observers = captor.getAllValues();
+        assertNotSame(observers.get(0), observers.get(1));
+
+        first.dispose();
+        verify(contentResolver).unregisterContentObserver(observers.get(0));
+        verify(contentResolver, never()).unregisterContentObserver(observers.get(1));
+
+        observers.get(1).onChange(false);
+        first.assertValueCount(1);
+        second.assertValueCount(2);
+
+        second.dispose();
+        verify(contentResolver).unregisterContentObserver(observers.get(1));
+    }
+
+    private static final class RecordingMetricsListener implements MetricsListener {
+
+        final List<QueryMetrics> queries = new ArrayList<>();
+        final List<Integer> coalescedCounts = new ArrayList<>();
+
+        @Override
+        public void onQueryCompleted(
+                @NonNull final RxCursorLoader.Query query,
+                @NonNull final QueryMetrics metrics) {
+            queries.add(metrics);
+        }
+
+        @Override
+        public void onReloadEmitted(
+                @NonNull final RxCursorLoader.Query query,
+                final long notificationToEmitNanos,
+                final int coalescedNotificationCount) {
+            assertTrue(notificationToEmitNanos >= 0);
+            coalescedCounts.add(coalescedNotificationCount);
+        }
+
+        @Override
+        public void onNotificationDropped(
+                @NonNull final RxCursorLoader.Query query,
+                @Nullable final Uri uri) {
+        }
+    }
 }